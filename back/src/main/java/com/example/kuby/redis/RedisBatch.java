@@ -0,0 +1,131 @@
+package com.example.kuby.redis;
+
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Commands collected while handling one request and sent to Redis in a single pipelined round trip.
+ * Consumers register their commands, call {@link #execute()} once and then read their {@link Reply}s.
+ * If Redis is unreachable the batch is marked failed instead of throwing, and every consumer applies
+ * its own fallback.
+ */
+public class RedisBatch {
+    private static final String CALLER = "request_batch";
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final List<Consumer<StringRedisConnection>> commands = new ArrayList<>();
+    private final Map<String, RedisScript<?>> scripts = new LinkedHashMap<>();
+    private final Set<String> loadedScripts;
+    private List<Object> results;
+    private boolean failed;
+
+    RedisBatch(StringRedisTemplate redisTemplate, RedisCircuitBreaker circuitBreaker, Set<String> loadedScripts) {
+        this.redisTemplate = redisTemplate;
+        this.circuitBreaker = circuitBreaker;
+        this.loadedScripts = loadedScripts;
+    }
+
+    @FunctionalInterface
+    public interface Reply<T> {
+        T get();
+    }
+
+    public <T> Reply<T> evalSha(RedisScript<?> script, ReturnType returnType, List<String> keys,
+                                List<String> args, Function<Object, T> converter) {
+        scripts.putIfAbsent(script.getSha1(), script);
+
+        String[] keysAndArgs = new String[keys.size() + args.size()];
+        for (int i = 0; i < keys.size(); i++)
+            keysAndArgs[i] = keys.get(i);
+        for (int i = 0; i < args.size(); i++)
+            keysAndArgs[keys.size() + i] = args.get(i);
+
+        return add(connection -> connection.evalSha(script.getSha1(), returnType, keys.size(), keysAndArgs), converter);
+    }
+
+    public <T> Reply<T> add(Consumer<StringRedisConnection> command, Function<Object, T> converter) {
+        if (results != null || failed)
+            throw new IllegalStateException("Redis batch was already executed");
+
+        int index = commands.size();
+        commands.add(command);
+        return () -> {
+            if (failed)
+                throw new IllegalStateException("Redis batch failed, check isFailed() before reading replies");
+            if (results == null)
+                throw new IllegalStateException("Redis batch was not executed yet");
+            return converter.apply(results.get(index));
+        };
+    }
+
+    public void execute() {
+        if (results != null || failed)
+            return;
+        if (commands.isEmpty()) {
+            results = List.of();
+            return;
+        }
+
+        circuitBreaker.run(CALLER, () -> results = pipeline(), () -> failed = true);
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    private List<Object> pipeline() {
+        // Scripts this node hasn't loaded yet are loaded at the head of the same pipeline, so the first
+        // EVALSHA never misses and nothing has to be re-sent
+        List<RedisScript<?>> toLoad = scripts.values().stream()
+                .filter(script -> !loadedScripts.contains(script.getSha1()))
+                .toList();
+
+        List<Object> replies;
+        try {
+            replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                toLoad.forEach(script -> stringConnection.scriptLoad(script.getScriptAsString()));
+                commands.forEach(command -> command.accept(stringConnection));
+                return null;
+            });
+        } catch (RedisPipelineException ex) {
+            // Redis lost its script cache after a restart or SCRIPT FLUSH. Other commands of the batch may
+            // already have been applied, so it is not retried; the next batch loads the scripts again
+            if (isMissingScript(ex))
+                loadedScripts.clear();
+            throw ex;
+        }
+
+        toLoad.forEach(script -> loadedScripts.add(script.getSha1()));
+        return replies.subList(toLoad.size(), replies.size());
+    }
+
+    private static boolean isMissingScript(RedisPipelineException ex) {
+        if (mentionsMissingScript(ex))
+            return true;
+        for (Object result : ex.getPipelineResult())
+            if (result instanceof Throwable error && mentionsMissingScript(error))
+                return true;
+        return false;
+    }
+
+    private static boolean mentionsMissingScript(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause())
+            if (String.valueOf(cause.getMessage()).startsWith("NOSCRIPT"))
+                return true;
+        return false;
+    }
+}
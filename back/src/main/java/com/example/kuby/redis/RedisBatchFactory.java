@@ -0,0 +1,21 @@
+package com.example.kuby.redis;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Component
+@RequiredArgsConstructor
+public class RedisBatchFactory {
+    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    // Shas of the scripts this node already loaded into Redis
+    private final Set<String> loadedScripts = ConcurrentHashMap.newKeySet();
+
+    public RedisBatch create() {
+        return new RedisBatch(redisTemplate, circuitBreaker, loadedScripts);
+    }
+}
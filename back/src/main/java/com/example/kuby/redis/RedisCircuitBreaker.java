@@ -0,0 +1,135 @@
+package com.example.kuby.redis;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class RedisCircuitBreaker {
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMillis;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final Map<String, Counter> fallbacks = new ConcurrentHashMap<>();
+    private volatile long openedAt;
+
+    @Autowired
+    public RedisCircuitBreaker(MeterRegistry meterRegistry,
+                               @Value("${redis.circuit.failure-threshold:5}") int failureThreshold,
+                               @Value("${redis.circuit.open.duration:5000}") long openDurationMillis) {
+        this(meterRegistry, failureThreshold, openDurationMillis, System::currentTimeMillis);
+    }
+
+    RedisCircuitBreaker(MeterRegistry meterRegistry, int failureThreshold, long openDurationMillis, LongSupplier clock) {
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+
+        Gauge.builder("redis.circuit.state", state, current -> current.get().ordinal())
+                .description("0 - closed, 1 - open, 2 - half open")
+                .register(meterRegistry);
+    }
+
+    public <T> T execute(String caller, Supplier<T> call, Supplier<T> fallback) {
+        if (!isCallPermitted())
+            return fallback(caller, fallback);
+
+        try {
+            T result = call.get();
+            onSuccess();
+            return result;
+        } catch (DataAccessException ex) {
+            onFailure(caller, ex);
+            return fallback(caller, fallback);
+        } catch (RuntimeException ex) {
+            // Not a Redis error the caller can fall back from, but it still settles a half open probe
+            onFailure(caller, ex);
+            throw ex;
+        }
+    }
+
+    public void run(String caller, Runnable call, Runnable fallback) {
+        execute(caller, () -> {
+            call.run();
+            return null;
+        }, () -> {
+            fallback.run();
+            return null;
+        });
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    // While half open only the thread that won the transition probes Redis, the rest keep falling back
+    private boolean isCallPermitted() {
+        State current = state.get();
+        if (current == State.CLOSED)
+            return true;
+        if (current == State.OPEN && clock.getAsLong() - openedAt >= openDurationMillis)
+            return transition(State.OPEN, State.HALF_OPEN);
+        return false;
+    }
+
+    private void onSuccess() {
+        consecutiveFailures.set(0);
+        if (state.get() == State.HALF_OPEN)
+            transition(State.HALF_OPEN, State.CLOSED);
+    }
+
+    private void onFailure(String caller, RuntimeException ex) {
+        if (state.get() == State.HALF_OPEN) {
+            openedAt = clock.getAsLong();
+            transition(State.HALF_OPEN, State.OPEN);
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            openedAt = clock.getAsLong();
+            if (transition(State.CLOSED, State.OPEN))
+                log.warn("Redis circuit opened after {} consecutive failures, last one from {}", failureThreshold, caller, ex);
+        }
+    }
+
+    private boolean transition(State from, State to) {
+        if (!state.compareAndSet(from, to))
+            return false;
+
+        if (to == State.CLOSED)
+            log.info("Redis circuit closed");
+        Counter.builder("redis.circuit.transitions")
+                .tag("from", from.name())
+                .tag("to", to.name())
+                .register(meterRegistry)
+                .increment();
+        return true;
+    }
+
+    private <T> T fallback(String caller, Supplier<T> fallback) {
+        fallbacks.computeIfAbsent(caller, name -> Counter.builder("redis.circuit.fallbacks")
+                        .tag("caller", name)
+                        .register(meterRegistry))
+                .increment();
+        return fallback.get();
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.kuby.redis;
+
+public enum RedisFallback {
+    FAIL_OPEN,
+    FAIL_CLOSED,
+    // Decide from state kept on this node: an approximate limiter or the last known snapshot
+    LOCAL
+}
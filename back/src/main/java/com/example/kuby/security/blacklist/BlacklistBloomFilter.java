@@ -0,0 +1,109 @@
+package com.example.kuby.security.blacklist;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+// Node-local Bloom filter of blacklisted jwtIds, so only possible hits have to be looked up in Redis.
+// Expired entries can't be removed from a Bloom filter, so it is rebuilt from a SCAN periodically.
+@Slf4j
+@Component
+public class BlacklistBloomFilter implements MessageListener {
+    static final String KEY_PREFIX = "blacklist:";
+    private static final String ADDITIONS_CHANNEL = "blacklist_additions";
+
+    private final StringRedisTemplate redisTemplate;
+    private final long expectedInsertions;
+    private final double falsePositiveProbability;
+    private volatile BloomFilter current;
+    private volatile BloomFilter rebuilding;
+    // Until the first rebuild finished every lookup has to go to Redis
+    private volatile boolean ready;
+
+    public BlacklistBloomFilter(StringRedisTemplate redisTemplate,
+                                RedisMessageListenerContainer listenerContainer,
+                                MeterRegistry meterRegistry,
+                                @Value("${security.blacklist.bloom.expected-insertions:100000}") long expectedInsertions,
+                                @Value("${security.blacklist.bloom.fpp:0.001}") double falsePositiveProbability) {
+        this.redisTemplate = redisTemplate;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.current = new BloomFilter(expectedInsertions, falsePositiveProbability);
+
+        Gauge.builder("blacklist.bloom.size", this, filter -> filter.current.sizeInBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(ADDITIONS_CHANNEL));
+    }
+
+    public boolean mightContain(String jwtId) {
+        return !ready || current.mightContain(jwtId);
+    }
+
+    public void add(String jwtId) {
+        put(jwtId);
+        try {
+            redisTemplate.convertAndSend(ADDITIONS_CHANNEL, jwtId);
+        } catch (DataAccessException ex) {
+            log.warn("Failed to broadcast blacklisted token {}", jwtId, ex);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        put(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${security.blacklist.bloom.rebuild.period:600000}",
+            fixedDelayString = "${security.blacklist.bloom.rebuild.period:600000}")
+    public void rebuild() {
+        BloomFilter next = new BloomFilter(expectedInsertions, falsePositiveProbability);
+        rebuilding = next;
+        long entries = 0;
+        try (Cursor<String> keys = redisTemplate.scan(ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build())) {
+            while (keys.hasNext()) {
+                next.put(keys.next().substring(KEY_PREFIX.length()));
+                entries++;
+            }
+        } catch (DataAccessException ex) {
+            rebuilding = null;
+            log.warn("Failed to rebuild the blacklist Bloom filter, keeping the previous one", ex);
+            return;
+        }
+
+        current = next;
+        rebuilding = null;
+        ready = true;
+        if (entries > expectedInsertions)
+            log.warn("Blacklist holds {} tokens, more than the {} the Bloom filter is sized for", entries, expectedInsertions);
+    }
+
+    // The filter being rebuilt goes first: once it is seen as null, current already is the rebuilt one
+    private void put(String jwtId) {
+        BloomFilter next = rebuilding;
+        if (next != null)
+            next.put(jwtId);
+        current.put(jwtId);
+    }
+}
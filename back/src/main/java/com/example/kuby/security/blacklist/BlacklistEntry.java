@@ -0,0 +1,19 @@
+package com.example.kuby.security.blacklist;
+
+import com.example.kuby.security.models.enums.TokenActionType;
+
+import java.util.Map;
+
+// Pending claim actions of a token. Values hold the new value of UPDATE actions that set a claim,
+// an UPDATE without a value removes the claim. The revision grows with every change of the entry.
+public record BlacklistEntry(Map<String, TokenActionType> actions, Map<String, String> values, long revision) {
+    public static final BlacklistEntry EMPTY = new BlacklistEntry(Map.of(), Map.of(), 0);
+
+    public boolean isEmpty() {
+        return actions.isEmpty();
+    }
+
+    public boolean isRevoked() {
+        return actions.containsValue(TokenActionType.DELETE);
+    }
+}
@@ -1,59 +1,193 @@
 package com.example.kuby.security.blacklist;
 
+import com.example.kuby.exceptions.BasicException;
+import com.example.kuby.redis.RedisBatch;
+import com.example.kuby.redis.RedisCircuitBreaker;
+import com.example.kuby.redis.RedisFallback;
 import com.example.kuby.security.models.enums.TokenActionType;
-import org.springframework.data.redis.connection.DataType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class BlacklistService {
+    private static final String CALLER = "blacklist";
+    private static final String VALUE_PREFIX = "value:";
+    private static final String REVISION_FIELD = "_revision";
+    // Reads, merges, bumps the revision and sets the expiry in one step, so concurrent updates of a token
+    // can't overwrite each other and the entry is never left without a TTL
+    private static final RedisScript<Long> MERGE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/blacklist_merge.lua"), Long.class);
+    private static final List<String> MERGE_ARGUMENTS = Stream.concat(
+            Stream.of(REVISION_FIELD, VALUE_PREFIX, Integer.toString(TokenActionType.values().length)),
+            Arrays.stream(TokenActionType.values())
+                    .flatMap(actionType -> Stream.of(actionType.name(), Integer.toString(actionType.getPriority()))))
+            .toList();
+
     private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final RedisFallback fallback;
+    private final BlacklistBloomFilter bloomFilter;
+    // Last known blacklist entries, consulted only while Redis is unreachable
+    private final Cache<String, BlacklistEntry> snapshot;
 
-    public BlacklistService(StringRedisTemplate redisTemplate) {
+    public BlacklistService(StringRedisTemplate redisTemplate,
+                            RedisCircuitBreaker circuitBreaker,
+                            BlacklistBloomFilter bloomFilter,
+                            @Value("${security.blacklist.fallback:local}") RedisFallback fallback,
+                            @Value("${security.blacklist.snapshot.max-size:100000}") long snapshotMaxSize,
+                            @Value("${security.jwt.access.token.duration.minutes:15}") long accessDurationMinutes) {
         this.redisTemplate = redisTemplate;
+        this.circuitBreaker = circuitBreaker;
+        this.fallback = fallback;
+        this.bloomFilter = bloomFilter;
+        this.snapshot = Caffeine.newBuilder()
+                .maximumSize(snapshotMaxSize)
+                .expireAfterWrite(Duration.ofMinutes(accessDurationMinutes))
+                .build();
     }
 
     public void addToBlacklist(String jwtId, Map<String, TokenActionType> actions, long expirationTime) {
-        Map<Object, Object> existingActions = redisTemplate.opsForHash().entries(jwtId);
-        Map<String, String> updatedActions = new HashMap<>(existingActions.size() + actions.size());
+        addToBlacklist(jwtId, actions, Map.of(), expirationTime);
+    }
 
-        existingActions.forEach((k, v) -> updatedActions.put((String) k, (String) v));
+    // New values only apply to UPDATE actions, an UPDATE without a new value removes the claim
+    public void addToBlacklist(String jwtId, Map<String, TokenActionType> actions, Map<String, String> newValues, long expirationTime) {
+        snapshot.asMap().merge(jwtId, merge(BlacklistEntry.EMPTY, actions, newValues),
+                (existing, added) -> merge(existing, actions, newValues));
 
+        List<String> args = new ArrayList<>(1 + MERGE_ARGUMENTS.size() + actions.size() * 3);
+        args.add(Long.toString(expirationTime));
+        args.addAll(MERGE_ARGUMENTS);
         actions.forEach((key, actionType) -> {
-            String existingAction = updatedActions.get(key);
-            if (existingAction == null || actionType.getPriority() > TokenActionType.valueOf(existingAction).getPriority()) {
-                updatedActions.put(key, actionType.name());
-            }
+            String newValue = actionType == TokenActionType.UPDATE ? newValues.get(key) : null;
+            args.add(key);
+            args.add(actionType.name());
+            args.add(newValue == null ? "" : "+" + newValue);
         });
 
-        if (!updatedActions.isEmpty()) {
-            redisTemplate.opsForHash().putAll(jwtId, updatedActions);
-            redisTemplate.expire(jwtId, expirationTime, TimeUnit.MILLISECONDS);
-        }
+        circuitBreaker.run(CALLER, () -> {
+            Long revision = redisTemplate.execute(MERGE_SCRIPT, List.of(key(jwtId)), args.toArray());
+            if (revision != null && revision > 0)
+                bloomFilter.add(jwtId);
+        }, () -> {
+            throw unavailable();
+        });
     }
 
     public Map<String, TokenActionType> getBlacklistActions(String jwtId) {
-        Map<Object, Object> entries = redisTemplate.opsForHash().entries(jwtId);
-        return entries.entrySet().stream()
-                .collect(Collectors.toMap(
-                        e -> (String) e.getKey(),
-                        e -> TokenActionType.valueOf((String) e.getValue()),
-                        (v1, v2) -> v2,
-                        HashMap::new
-                ));
+        if (!bloomFilter.mightContain(jwtId))
+            return new HashMap<>();
+
+        return new HashMap<>(circuitBreaker.execute(CALLER, () -> {
+            BlacklistEntry entry = toEntry(redisTemplate.opsForHash().entries(key(jwtId)));
+            if (!entry.isEmpty())
+                snapshot.put(jwtId, entry);
+            return entry;
+        }, () -> fallbackEntry(jwtId)).actions());
+    }
+
+    // Entries stay until the token expires, so every copy of the token sees the same actions
+    public RedisBatch.Reply<BlacklistEntry> getBlacklistEntry(RedisBatch batch, String jwtId) {
+        if (!bloomFilter.mightContain(jwtId))
+            return () -> BlacklistEntry.EMPTY;
+
+        RedisBatch.Reply<BlacklistEntry> reply = batch.add(connection -> connection.hGetAll(key(jwtId)),
+                result -> toEntry((Map<?, ?>) result));
+
+        return () -> {
+            if (batch.isFailed())
+                return fallbackEntry(jwtId);
+
+            BlacklistEntry entry = reply.get();
+            if (!entry.isEmpty())
+                snapshot.put(jwtId, entry);
+            return entry;
+        };
     }
 
     public void removeFromBlacklist(String jwtId) {
-        redisTemplate.delete(jwtId);
+        snapshot.invalidate(jwtId);
+        circuitBreaker.run(CALLER, () -> redisTemplate.delete(key(jwtId)), () -> {
+        });
     }
 
     public boolean isBlacklisted(String jwtId) {
-        return Boolean.TRUE.equals(redisTemplate.hasKey(jwtId));
+        if (!bloomFilter.mightContain(jwtId))
+            return false;
+
+        return circuitBreaker.execute(CALLER, () -> Boolean.TRUE.equals(redisTemplate.hasKey(key(jwtId))),
+                () -> switch (fallback) {
+                    case FAIL_OPEN -> false;
+                    case FAIL_CLOSED -> throw unavailable();
+                    case LOCAL -> snapshot.getIfPresent(jwtId) != null;
+                });
+    }
+
+    private static String key(String jwtId) {
+        return BlacklistBloomFilter.KEY_PREFIX + jwtId;
+    }
+
+    private BlacklistEntry fallbackEntry(String jwtId) {
+        return switch (fallback) {
+            case FAIL_OPEN -> BlacklistEntry.EMPTY;
+            case FAIL_CLOSED -> throw unavailable();
+            case LOCAL -> snapshot.asMap().getOrDefault(jwtId, BlacklistEntry.EMPTY);
+        };
+    }
+
+    private static BlacklistEntry toEntry(Map<?, ?> hash) {
+        if (hash == null || hash.isEmpty())
+            return BlacklistEntry.EMPTY;
+
+        Map<String, TokenActionType> actions = new HashMap<>(hash.size());
+        Map<String, String> values = new HashMap<>();
+        long revision = 0;
+        for (Map.Entry<?, ?> field : hash.entrySet()) {
+            String name = field.getKey().toString();
+            String value = field.getValue().toString();
+            if (name.equals(REVISION_FIELD))
+                revision = Long.parseLong(value);
+            else if (name.startsWith(VALUE_PREFIX))
+                values.put(name.substring(VALUE_PREFIX.length()), value);
+            else
+                actions.put(name, TokenActionType.valueOf(value));
+        }
+        return new BlacklistEntry(actions, values, revision);
+    }
+
+    private static BlacklistEntry merge(BlacklistEntry existing, Map<String, TokenActionType> added, Map<String, String> newValues) {
+        Map<String, TokenActionType> actions = new HashMap<>(existing.actions());
+        Map<String, String> values = new HashMap<>(existing.values());
+        added.forEach((key, actionType) -> {
+            TokenActionType existingAction = actions.get(key);
+            if (existingAction != null && actionType.getPriority() < existingAction.getPriority())
+                return;
+
+            actions.put(key, actionType);
+            String newValue = actionType == TokenActionType.UPDATE ? newValues.get(key) : null;
+            if (newValue == null)
+                values.remove(key);
+            else
+                values.put(key, newValue);
+        });
+        return new BlacklistEntry(actions, values, existing.revision() + 1);
+    }
+
+    private static BasicException unavailable() {
+        return new BasicException(Map.of("blacklist", "Token blacklist is temporarily unavailable"), HttpStatus.SERVICE_UNAVAILABLE);
     }
-}
\ No newline at end of file
+}
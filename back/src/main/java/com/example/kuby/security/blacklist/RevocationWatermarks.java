@@ -0,0 +1,124 @@
+package com.example.kuby.security.blacklist;
+
+import com.example.kuby.exceptions.BasicException;
+import com.example.kuby.redis.RedisBatch;
+import com.example.kuby.redis.RedisBatchFactory;
+import com.example.kuby.redis.RedisFallback;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+// One "tokens issued before T are revoked" watermark per user, so logging out everywhere is a single write
+@Slf4j
+@Component
+public class RevocationWatermarks implements MessageListener {
+    private static final String KEY_PREFIX = "revoked_before:";
+    private static final String CHANNEL = "revoked_before";
+    private static final char SEPARATOR = '|';
+    private static final long NONE = 0;
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisBatchFactory redisBatchFactory;
+    private final RedisFallback fallback;
+    private final Duration watermarkTtl;
+    // Epoch second of the watermark, NONE when the user never logged out everywhere
+    private final Cache<UUID, Long> watermarks;
+
+    public RevocationWatermarks(StringRedisTemplate redisTemplate,
+                                RedisBatchFactory redisBatchFactory,
+                                RedisMessageListenerContainer listenerContainer,
+                                @Value("${security.blacklist.fallback:local}") RedisFallback fallback,
+                                @Value("${security.revocation.watermark.cache.max-size:100000}") long maxSize,
+                                @Value("${security.revocation.watermark.cache.ttl.seconds:60}") long ttlSeconds,
+                                @Value("${security.jwt.access.token.duration.days:7}") int refreshDurationDays) {
+        this.redisTemplate = redisTemplate;
+        this.redisBatchFactory = redisBatchFactory;
+        this.fallback = fallback;
+        this.watermarkTtl = Duration.ofDays(refreshDurationDays);
+        this.watermarks = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(CHANNEL));
+    }
+
+    // Outlives every token it can revoke, refresh tokens included
+    public void revokeAllIssuedBefore(UUID userId, Instant instant) {
+        long watermark = instant.getEpochSecond();
+        redisTemplate.opsForValue().set(KEY_PREFIX + userId, String.valueOf(watermark), watermarkTtl);
+        watermarks.asMap().merge(userId, watermark, Math::max);
+
+        try {
+            redisTemplate.convertAndSend(CHANNEL, userId.toString() + SEPARATOR + watermark);
+        } catch (DataAccessException ex) {
+            log.warn("Failed to broadcast revocation watermark of user {}", userId, ex);
+        }
+    }
+
+    public boolean isRevoked(UUID userId, Instant issuedAt) {
+        RedisBatch batch = redisBatchFactory.create();
+        RedisBatch.Reply<Boolean> revoked = isRevoked(batch, userId, issuedAt);
+        batch.execute();
+        return revoked.get();
+    }
+
+    public RedisBatch.Reply<Boolean> isRevoked(RedisBatch batch, UUID userId, Instant issuedAt) {
+        Long cached = watermarks.getIfPresent(userId);
+        if (cached != null) {
+            boolean revoked = isRevoked(cached, issuedAt);
+            return () -> revoked;
+        }
+
+        RedisBatch.Reply<Long> stored = batch.add(connection -> connection.get(KEY_PREFIX + userId),
+                reply -> reply == null ? NONE : Long.parseLong(reply.toString()));
+        return () -> {
+            if (batch.isFailed()) {
+                if (fallback == RedisFallback.FAIL_CLOSED)
+                    throw new BasicException(Map.of("token", "Token revocation state is temporarily unavailable"),
+                            HttpStatus.SERVICE_UNAVAILABLE);
+                return false;
+            }
+            // A newer watermark may have arrived over pub/sub while the GET was in flight
+            long watermark = watermarks.asMap().merge(userId, stored.get(), Math::max);
+            return isRevoked(watermark, issuedAt);
+        };
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separatorIndex = body.indexOf(SEPARATOR);
+        if (separatorIndex < 0)
+            return;
+
+        try {
+            watermarks.asMap().merge(UUID.fromString(body.substring(0, separatorIndex)),
+                    Long.parseLong(body, separatorIndex + 1, body.length(), 10), Math::max);
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    // iat has second precision, so a token issued in the same second as the logout counts as revoked.
+    // Tokens without iat predate the watermarks and are revoked as soon as one exists.
+    private static boolean isRevoked(long watermark, Instant issuedAt) {
+        if (watermark == NONE)
+            return false;
+        return issuedAt == null || issuedAt.getEpochSecond() <= watermark;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.kuby.security.cache;
+
+import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.security.models.enums.Provider;
+import com.example.kuby.security.models.principal.UserPrincipal;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class UserPrincipalCache implements MessageListener {
+    private static final String INVALIDATION_CHANNEL = "user_principal_invalidation";
+    private static final char SEPARATOR = '|';
+
+    private final Cache<String, UserPrincipal> principals;
+    private final StringRedisTemplate redisTemplate;
+    private final Counter localInvalidations;
+    private final Counter remoteInvalidations;
+    private final Timer invalidationLag;
+
+    public UserPrincipalCache(StringRedisTemplate redisTemplate,
+                              RedisMessageListenerContainer listenerContainer,
+                              MeterRegistry meterRegistry,
+                              @Value("${security.principal.cache.max-size:10000}") long maxSize,
+                              @Value("${security.principal.cache.ttl.seconds:300}") long ttlSeconds) {
+        this.redisTemplate = redisTemplate;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "user_principal");
+        this.localInvalidations = Counter.builder("user_principal.invalidations")
+                .tag("source", "local")
+                .register(meterRegistry);
+        this.remoteInvalidations = Counter.builder("user_principal.invalidations")
+                .tag("source", "remote")
+                .register(meterRegistry);
+        this.invalidationLag = Timer.builder("user_principal.invalidation.lag")
+                .register(meterRegistry);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATION_CHANNEL));
+    }
+
+    public UserPrincipal get(String email, Provider provider, Supplier<Optional<UserEntity>> loader) {
+        return principals.get(key(email, provider), key -> loader.get()
+                .map(UserPrincipal::from)
+                .orElse(null));
+    }
+
+    public void invalidate(String email, Provider provider) {
+        String key = key(email, provider);
+        principals.invalidate(key);
+        localInvalidations.increment();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    principals.invalidate(key);
+                    publish(key);
+                }
+            });
+        } else {
+            publish(key);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separatorIndex = body.indexOf(SEPARATOR);
+        if (separatorIndex < 0)
+            return;
+
+        principals.invalidate(body.substring(separatorIndex + 1));
+        remoteInvalidations.increment();
+
+        try {
+            long publishedAt = Long.parseLong(body, 0, separatorIndex, 10);
+            invalidationLag.record(Math.max(0, System.currentTimeMillis() - publishedAt), TimeUnit.MILLISECONDS);
+        } catch (NumberFormatException ignored) {
+        }
+    }
+
+    private void publish(String key) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, System.currentTimeMillis() + String.valueOf(SEPARATOR) + key);
+        } catch (DataAccessException ex) {
+            log.warn("Failed to broadcast principal invalidation for {}", key, ex);
+        }
+    }
+
+    private static String key(String email, Provider provider) {
+        return provider.name() + ":" + email;
+    }
+}
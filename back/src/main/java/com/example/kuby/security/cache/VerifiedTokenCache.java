@@ -0,0 +1,134 @@
+package com.example.kuby.security.cache;
+
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.function.Function;
+
+@Component
+public class VerifiedTokenCache {
+    private static final int MAX_TOKEN_LENGTH = 4096;
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    });
+
+    private final Cache<String, DecodedJWT> verifiedTokens;
+    private final Cache<String, Boolean> rejectedTokens;
+
+    @Autowired
+    public VerifiedTokenCache(@Value("${security.jwt.cache.max-size:10000}") long maxSize,
+                              @Value("${security.jwt.cache.negative.max-size:10000}") long negativeMaxSize,
+                              @Value("${security.jwt.cache.negative.ttl.seconds:60}") long negativeTtlSeconds) {
+        this(maxSize, negativeMaxSize, negativeTtlSeconds, VerifiedTokenCache::epochNanos);
+    }
+
+    // The ticker must count nanoseconds since the epoch, so entries can expire exactly at the token's exp
+    VerifiedTokenCache(long maxSize, long negativeMaxSize, long negativeTtlSeconds, Ticker epochTicker) {
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new ExpiresAtExpiry())
+                .ticker(epochTicker)
+                .build();
+        this.rejectedTokens = Caffeine.newBuilder()
+                .maximumSize(negativeMaxSize)
+                .expireAfterWrite(Duration.ofSeconds(negativeTtlSeconds))
+                .ticker(epochTicker)
+                .build();
+    }
+
+    public DecodedJWT verify(String token, Function<String, DecodedJWT> verifier) {
+        if (!isWellFormed(token))
+            return null;
+
+        String key = digest(token);
+
+        DecodedJWT cached = verifiedTokens.getIfPresent(key);
+        if (cached != null)
+            return cached;
+
+        if (rejectedTokens.getIfPresent(key) != null)
+            return null;
+
+        DecodedJWT decodedJWT = verifier.apply(token);
+        if (decodedJWT == null) {
+            rejectedTokens.put(key, Boolean.TRUE);
+            return null;
+        }
+        if (decodedJWT.getExpiresAtAsInstant() != null)
+            verifiedTokens.put(key, decodedJWT);
+
+        return decodedJWT;
+    }
+
+    public void invalidate(String token) {
+        verifiedTokens.invalidate(digest(token));
+    }
+
+    static boolean isWellFormed(String token) {
+        int length = token.length();
+        if (length > MAX_TOKEN_LENGTH || !token.startsWith("eyJ"))
+            return false;
+
+        int dots = 0;
+        char previous = '.';
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (c == '.') {
+                if (previous == '.' || ++dots > 2)
+                    return false;
+            } else if (!isBase64UrlChar(c)) {
+                return false;
+            }
+            previous = c;
+        }
+        return dots == 2 && previous != '.';
+    }
+
+    private static boolean isBase64UrlChar(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+    }
+
+    private static String digest(String token) {
+        byte[] hash = SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+    }
+
+    private static long epochNanos() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private static class ExpiresAtExpiry implements Expiry<String, DecodedJWT> {
+        @Override
+        public long expireAfterCreate(String key, DecodedJWT value, long currentTime) {
+            Instant expiresAt = value.getExpiresAtAsInstant();
+            return Math.max(0, expiresAt.getEpochSecond() * 1_000_000_000L + expiresAt.getNano() - currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, DecodedJWT value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, DecodedJWT value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -1,36 +1,23 @@
 package com.example.kuby.security.context;
 
-import com.auth0.jwt.interfaces.Claim;
-import com.example.kuby.exceptions.BasicException;
-import org.springframework.http.HttpStatus;
-
-import java.util.Map;
-import java.util.UUID;
-
-import static com.example.kuby.security.util.parsers.AuthHeaderParser.getPayloadValueByKey;
-
+// Claims of the access token the current request was authenticated with, bound by JwtAuthFilter around the
+// rest of the filter chain. ScopedValue isn't available on Java 17, so a thread local that the filter clears
+// in a finally block gives the same lifetime, virtual threads included.
 public class TokenClaimContext {
-    private static final ThreadLocal<Map<String, Claim>> tokenClaimThreadLocal = new ThreadLocal<>();
+    private static final ThreadLocal<TokenClaims> tokenClaimThreadLocal = new ThreadLocal<>();
 
-    public static void set(Map<String, Claim> claim) {
-        tokenClaimThreadLocal.set(claim);
+    public static void set(TokenClaims claims) {
+        tokenClaimThreadLocal.set(claims);
     }
 
-    public static Map<String, Claim> get() {
-        return tokenClaimThreadLocal.get();
+    public static TokenClaims get() {
+        TokenClaims claims = tokenClaimThreadLocal.get();
+        if (claims == null)
+            throw new IllegalStateException("Token claims not set");
+        return claims;
     }
+
     public static void clear() {
         tokenClaimThreadLocal.remove();
     }
-
-    public static UUID getIdByKey(String key) {
-        return getPayloadValueByKey(tokenClaimThreadLocal.get(), key, claim -> {
-            try {
-                return UUID.fromString(claim.asString());
-            } catch (IllegalArgumentException ex) {
-                throw new BasicException(Map.of(key, "Not matches UUID pattern"), HttpStatus.BAD_REQUEST);
-            }
-        });
-    }
 }
-
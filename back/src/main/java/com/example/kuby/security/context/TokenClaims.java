@@ -0,0 +1,53 @@
+package com.example.kuby.security.context;
+
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.example.kuby.exceptions.BasicException;
+import com.example.kuby.security.models.enums.Provider;
+import com.example.kuby.security.models.enums.TokenType;
+import com.example.kuby.security.models.enums.UserRoles;
+import org.springframework.http.HttpStatus;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+
+import static com.example.kuby.security.util.parsers.AuthHeaderParser.getIdFromClaimsByKey;
+import static com.example.kuby.security.util.parsers.AuthHeaderParser.getPayloadValueByKey;
+import static com.example.kuby.security.util.parsers.AuthHeaderParser.getProviderFromClaims;
+import static com.example.kuby.security.util.parsers.AuthHeaderParser.getRolesFromClaims;
+
+// Claims of a verified token parsed once. familyId and roles are null when the token doesn't carry them,
+// refresh tokens have no roles.
+public record TokenClaims(UUID userId,
+                          UUID jwtId,
+                          UUID familyId,
+                          TokenType tokenType,
+                          String email,
+                          Provider provider,
+                          UserRoles roles,
+                          Instant issuedAt,
+                          Instant expiresAt) {
+
+    public static TokenClaims from(DecodedJWT decodedJWT) {
+        Map<String, Claim> claims = decodedJWT.getClaims();
+        if (decodedJWT.getSubject() == null)
+            throw new BasicException(Map.of("sub", "There is no such key in token claims"), HttpStatus.BAD_REQUEST);
+
+        return new TokenClaims(
+                getIdFromClaimsByKey(claims, "userId"),
+                getIdFromClaimsByKey(claims, "jwtId"),
+                isPresent(claims, "familyId") ? getIdFromClaimsByKey(claims, "familyId") : null,
+                getPayloadValueByKey(claims, "tokenType", claim -> TokenType.valueOf(claim.asString())),
+                decodedJWT.getSubject(),
+                getProviderFromClaims(claims),
+                isPresent(claims, "roles") ? getRolesFromClaims(claims) : null,
+                decodedJWT.getIssuedAtAsInstant(),
+                decodedJWT.getExpiresAtAsInstant());
+    }
+
+    private static boolean isPresent(Map<String, Claim> claims, String key) {
+        Claim claim = claims.get(key);
+        return claim != null && !claim.isMissing() && !claim.isNull();
+    }
+}
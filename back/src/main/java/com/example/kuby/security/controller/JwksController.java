@@ -0,0 +1,40 @@
+package com.example.kuby.security.controller;
+
+import com.example.kuby.security.keys.JwksDocument;
+import com.example.kuby.security.keys.JwtKeyRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+@RestController
+@RequiredArgsConstructor
+public class JwksController {
+    // Bounds how long verifiers keep trusting a removed key, new keys must be published at least this long before they sign
+    private static final CacheControl CACHE_CONTROL = CacheControl.maxAge(Duration.ofMinutes(5)).cachePublic();
+
+    private final JwtKeyRegistry keyRegistry;
+
+    @GetMapping(value = "/.well-known/jwks.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> jwks(@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        JwksDocument jwks = keyRegistry.jwks();
+        if (ifNoneMatch != null && matches(ifNoneMatch, jwks.etag()))
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(jwks.etag()).cacheControl(CACHE_CONTROL).build();
+
+        return ResponseEntity.ok().eTag(jwks.etag()).cacheControl(CACHE_CONTROL).body(jwks.json());
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(etag));
+    }
+}
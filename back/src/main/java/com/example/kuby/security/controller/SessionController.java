@@ -0,0 +1,44 @@
+package com.example.kuby.security.controller;
+
+import com.example.kuby.security.context.TokenClaimContext;
+import com.example.kuby.security.models.principal.UserPrincipal;
+import com.example.kuby.security.models.response.SessionResponse;
+import com.example.kuby.security.ratelimiter.RateLimitScope;
+import com.example.kuby.security.ratelimiter.WithRateLimitProtection;
+import com.example.kuby.security.service.JwtService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/user/sessions")
+@RequiredArgsConstructor
+public class SessionController {
+    private final JwtService jwtService;
+
+    @GetMapping
+    @WithRateLimitProtection(rateLimit = 30, scope = RateLimitScope.USER)
+    public ResponseEntity<List<SessionResponse>> getSessions(@AuthenticationPrincipal UserPrincipal user) {
+        UUID currentFamilyId = TokenClaimContext.get().familyId();
+        return ResponseEntity.ok(jwtService.getTokenFamilies(user.id()).stream()
+                .map(family -> SessionResponse.from(family, currentFamilyId))
+                .sorted(Comparator.comparing(SessionResponse::lastRefreshedAt).reversed())
+                .toList());
+    }
+
+    @DeleteMapping("/{familyId}")
+    @WithRateLimitProtection(rateLimit = 10, scope = RateLimitScope.USER)
+    public ResponseEntity<Void> revokeSession(@AuthenticationPrincipal UserPrincipal user, @PathVariable UUID familyId) {
+        jwtService.revokeTokenFamily(user.id(), familyId);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -3,14 +3,18 @@ package com.example.kuby.security.controller;
 import com.example.kuby.exceptions.BasicException;
 import com.example.kuby.foruser.UserEntity;
 import com.example.kuby.foruser.UserRepo;
+import com.example.kuby.security.context.TokenClaimContext;
 import com.example.kuby.security.models.enums.EmailCodeType;
 import com.example.kuby.security.models.enums.Provider;
+import com.example.kuby.security.models.principal.UserPrincipal;
 import com.example.kuby.security.models.request.ChangePasswordRequest;
 import com.example.kuby.security.models.request.LoginRequest;
 import com.example.kuby.security.models.request.OauthVerificationRequest;
 import com.example.kuby.security.models.request.SignUpRequest;
+import com.example.kuby.security.ratelimiter.RateLimitScope;
 import com.example.kuby.security.ratelimiter.WithRateLimitProtection;
 import com.example.kuby.security.service.EmailSubmitCodeService;
+import com.example.kuby.security.service.JwtService;
 import com.example.kuby.security.service.UserAuthenticationProvider;
 import com.example.kuby.security.service.UserService;
 import com.example.kuby.security.util.annotations.email.EmailExists;
@@ -22,6 +26,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
@@ -39,9 +44,14 @@ public class UserAuthController {
     private final EmailSubmitCodeService emailSubmitCodeService;
     private final AuthenticationManager authenticationManager;
     private final UserAuthenticationProvider authenticationProvider;
+    private final JwtService jwtService;
+
+    // Password hashing endpoints draw from one per-client budget: 7 logins, or 5 sign-ups, per minute
+    private static final String CREDENTIALS_BUDGET = "credentials";
+    private static final int CREDENTIALS_BUDGET_LIMIT = 15;
 
     @PostMapping("/register")
-    @WithRateLimitProtection
+    @WithRateLimitProtection(rateLimit = CREDENTIALS_BUDGET_LIMIT, weight = 3, budget = CREDENTIALS_BUDGET)
     @Transactional
     public ResponseEntity<?> register(@RequestBody @Valid SignUpRequest request) {
         userService.createUser(request.getEmail(), request.getLogin(), request.getPassword());
@@ -81,8 +91,9 @@ public class UserAuthController {
     }
 
     @PostMapping("/login")
-    @WithRateLimitProtection
-    public ResponseEntity<?> login(@RequestBody @Valid LoginRequest request) {
+    @WithRateLimitProtection(rateLimit = CREDENTIALS_BUDGET_LIMIT, weight = 2, budget = CREDENTIALS_BUDGET)
+    public ResponseEntity<?> login(@RequestBody @Valid LoginRequest request,
+                                   @RequestHeader(value = "User-Agent", required = false) String userAgent) {
         UserEntity userEntity = userRepo.findByLogin(request.getLogin())
                 .orElseThrow(() -> new BasicException(Map.of("login_or_password", "Email or password isn't correct"), HttpStatus.NOT_FOUND));
 
@@ -98,7 +109,7 @@ public class UserAuthController {
         if (!authUser.isAuthenticated())
             throw new BasicException(Map.of("login_or_password", "Email or password isn't correct"), HttpStatus.NOT_FOUND);
 
-        String[] accessAndRefreshToken = authenticationProvider.generateTokens(userEntity);
+        String[] accessAndRefreshToken = authenticationProvider.generateTokens(userEntity, userAgent);
         return ResponseEntity.ok()
                 .header("Authorization", "Bearer " + accessAndRefreshToken[0])
                 .header("X-Refresh-Token", accessAndRefreshToken[1])
@@ -119,8 +130,22 @@ public class UserAuthController {
                 .build();
     }
 
+    @PostMapping("/logout")
+    @WithRateLimitProtection(rateLimit = 10, scope = RateLimitScope.USER)
+    public ResponseEntity<Void> logout(@AuthenticationPrincipal UserPrincipal user) {
+        jwtService.logout(user.id(), TokenClaimContext.get());
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/logout-all")
+    @WithRateLimitProtection(rateLimit = 10, scope = RateLimitScope.USER)
+    public ResponseEntity<Void> logoutAll(@AuthenticationPrincipal UserPrincipal user) {
+        jwtService.logoutAll(user.id());
+        return ResponseEntity.noContent().build();
+    }
+
     @PostMapping("/change-password")
-    @WithRateLimitProtection
+    @WithRateLimitProtection(rateLimit = CREDENTIALS_BUDGET_LIMIT, weight = 2, budget = CREDENTIALS_BUDGET)
     public ResponseEntity<?> changePassword(@RequestBody @Valid ChangePasswordRequest request) {
         emailSubmitCodeService.sendCodeToEmail(request.getEmail(), EmailCodeType.CHANGE_PASSWORD, Provider.LOCAL);
         emailSubmitCodeService.cacheEmailAndPassword(request.getEmail(), request.getPassword());
@@ -128,7 +153,7 @@ public class UserAuthController {
     }
 
     @PostMapping("/summit-password-change")
-    @WithRateLimitProtection
+    @WithRateLimitProtection(rateLimit = CREDENTIALS_BUDGET_LIMIT, weight = 2, budget = CREDENTIALS_BUDGET)
     public ResponseEntity<?> submitPasswordChange(@RequestParam String code, @RequestParam String email) {
         String newPassword = emailSubmitCodeService.verifyChangePasswordSubmissionEmailCode(code, email);
         userService.changePassword(email, newPassword);
@@ -1,10 +1,21 @@
 package com.example.kuby.security.filter;
 
 import com.auth0.jwt.interfaces.DecodedJWT;
-import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.exceptions.BasicException;
 import com.example.kuby.foruser.UserRepo;
+import com.example.kuby.redis.RedisBatch;
+import com.example.kuby.redis.RedisBatchFactory;
+import com.example.kuby.security.blacklist.RevocationWatermarks;
+import com.example.kuby.security.cache.UserPrincipalCache;
+import com.example.kuby.security.cache.VerifiedTokenCache;
+import com.example.kuby.security.context.TokenClaimContext;
+import com.example.kuby.security.context.TokenClaims;
+import com.example.kuby.security.models.enums.Provider;
 import com.example.kuby.security.models.enums.TokenType;
+import com.example.kuby.security.models.principal.UserPrincipal;
 import com.example.kuby.security.ratelimiter.GlobalRateLimit;
+import com.example.kuby.security.ratelimiter.LocalRateLimitTier;
+import com.example.kuby.security.ratelimiter.RateLimitDecision;
 import com.example.kuby.security.service.JwtService;
 import com.example.kuby.security.service.UserAuthenticationProvider;
 import com.example.kuby.security.util.parsers.AuthHeaderParser;
@@ -26,13 +37,9 @@ import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.Collection;
-import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import static com.example.kuby.security.util.parsers.AuthHeaderParser.getIdFromClaimsByKey;
-import static com.example.kuby.security.util.parsers.AuthHeaderParser.getProviderFromClaims;
-
 
 @Component
 @RequiredArgsConstructor
@@ -43,60 +50,112 @@ public class JwtAuthFilter extends OncePerRequestFilter {
     private final GlobalRateLimit globalRateLimit;
     @Value("${global.rate.limit.turn.on}")
     private boolean turnOnRateLimit;
+    @Value("${security.jwt.claims-only-auth:false}")
+    private boolean claimsOnlyAuth;
     private final JwtService jwtService;
     private final PermitAllUrlConfig permitAllUrlConfig;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final UserPrincipalCache userPrincipalCache;
+    private final RedisBatchFactory redisBatchFactory;
+    private final RevocationWatermarks revocationWatermarks;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
-        if (turnOnRateLimit) {
-            if (!globalRateLimit.allowRequest(getClientIpAddress(request), System.currentTimeMillis())) {
+        long now = System.currentTimeMillis();
+        boolean permitAll = permitAllUrlConfig.isPermitAllRequest(request);
+        String token = permitAll ? null : AuthHeaderParser.recoverToken(request);
+        DecodedJWT decodedAccessToken = token == null ? null : verifiedTokenCache.verify(token,
+                accessToken -> userAuthenticationProvider.validateToken(accessToken, TokenType.ACCESS));
+        TokenClaims claims;
+        try {
+            claims = decodedAccessToken == null ? null : TokenClaims.from(decodedAccessToken);
+        } catch (BasicException ex) {
+            response.setStatus(ex.getHttpStatus().value());
+            return;
+        }
+
+        LocalRateLimitTier.Ticket rateLimitTicket = turnOnRateLimit
+                ? globalRateLimit.begin(getClientIpAddress(request), now)
+                : null;
+        boolean rateLimitNeedsRedis = rateLimitTicket != null && rateLimitTicket.decision() == null;
+
+        // Every Redis read this request needs goes out in one pipelined round trip. Anonymous requests the
+        // local rate limit tier decides alone don't need Redis, so they don't build a batch at all.
+        RedisBatch batch = rateLimitNeedsRedis || decodedAccessToken != null ? redisBatchFactory.create() : null;
+        RedisBatch.Reply<RateLimitDecision> rateLimitDecision = rateLimitNeedsRedis
+                ? globalRateLimit.check(batch, rateLimitTicket, now)
+                : null;
+        RedisBatch.Reply<DecodedJWT> claimedAccessToken = decodedAccessToken == null ? null : jwtService.applyTokenClaimActions(batch,
+                claims.jwtId().toString(), decodedAccessToken, response
+        );
+        RedisBatch.Reply<Boolean> tokenRevoked = decodedAccessToken == null ? null : revocationWatermarks.isRevoked(batch,
+                claims.userId(), claims.issuedAt()
+        );
+        if (batch != null)
+            batch.execute();
+
+        if (rateLimitTicket != null) {
+            RateLimitDecision decision = rateLimitNeedsRedis ? rateLimitDecision.get() : rateLimitTicket.decision();
+            if (!decision.allowed()) {
+                response.setHeader("Retry-After", String.valueOf(Math.max(1, (decision.blockedUntil() - now + 999) / 1000)));
                 response.setStatus(429);
                 return;
             }
         }
 
-        if (permitAllUrlConfig.isPermitAllRequest(request)) {
+        if (permitAll) {
             filterChain.doFilter(request, response);
             return;
         }
 
-        String token = AuthHeaderParser.recoverToken(request);
-        if (token == null) {
+        if (decodedAccessToken == null) {
             response.setStatus(401);
             return;
         }
 
-        DecodedJWT decodedAccessToken = userAuthenticationProvider.validateToken(token, TokenType.ACCESS);
-
-        if (decodedAccessToken == null) {
-            response.setStatus(401);
+        DecodedJWT accessToken;
+        try {
+            if (tokenRevoked.get()) {
+                response.setStatus(401);
+                return;
+            }
+            accessToken = claimedAccessToken.get();
+            if (accessToken != null && accessToken != decodedAccessToken)
+                claims = TokenClaims.from(accessToken);
+        } catch (BasicException ex) {
+            response.setStatus(ex.getHttpStatus().value());
             return;
         }
 
-        boolean isTokenClaimValid = jwtService.isTokenClaimValid(
-                getIdFromClaimsByKey(decodedAccessToken.getClaims(), "jwtId").toString(),
-                decodedAccessToken, response
-        );
-
-        if (!isTokenClaimValid) {
+        if (accessToken == null) {
             response.setStatus(420);
             return;
         }
 
-        Optional<UserEntity> optionalUser = userRepo.findByEmailAndProvider(
-                decodedAccessToken.getSubject(),
-                getProviderFromClaims(decodedAccessToken.getClaims())
-        );
+        UserPrincipal principal = claimsOnlyAuth && claims.roles() != null
+                ? new UserPrincipal(claims.userId(), claims.email(), claims.provider(), claims.roles())
+                : null;
 
-        if (optionalUser.isEmpty()) {
-            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
-            filterChain.doFilter(request, response);
-            return;
+        if (principal == null) {
+            String email = claims.email();
+            Provider provider = claims.provider();
+            principal = userPrincipalCache.get(email, provider, () -> userRepo.findByEmailAndProvider(email, provider));
+
+            if (principal == null) {
+                response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+                filterChain.doFilter(request, response);
+                return;
+            }
         }
-        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(optionalUser.get(), null, optionalUser.get().getAuthorities());
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
-        filterChain.doFilter(request, response);
+        TokenClaimContext.set(claims);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            TokenClaimContext.clear();
+        }
     }
 
     private String getClientIpAddress(HttpServletRequest request) {
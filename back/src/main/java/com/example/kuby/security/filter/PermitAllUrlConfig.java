@@ -2,28 +2,45 @@ package com.example.kuby.security.filter;
 
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpMethod;
-import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
-import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.stereotype.Component;
-import java.util.ArrayList;
+
 import java.util.List;
 
 @Component
 public class PermitAllUrlConfig {
 
-    private final List<RequestMatcher> permitAllMatchers = new ArrayList<>();
+    // Single source of truth for both authorizeHttpRequests and the JwtAuthFilter bypass, anything else requires authentication
+    private static final List<Route> ROUTES = List.of(
+            Route.permitAll(HttpMethod.GET, "/v3/api-docs/**"),
+            Route.permitAll(HttpMethod.GET, "/swagger-ui/**"),
+            Route.permitAll(HttpMethod.GET, "/swagger-ui.html"),
+            Route.permitAll(HttpMethod.GET, "/.well-known/jwks.json"),
 
-    public PermitAllUrlConfig addPermitAllMatcher(HttpMethod httpMethod, String pattern) {
-        permitAllMatchers.add(new AntPathRequestMatcher(pattern,httpMethod.name()));
-        return this;
-    }
-    public PermitAllUrlConfig addPermitAllMatcher( String pattern) {
-        permitAllMatchers.add(new AntPathRequestMatcher(pattern));
-        return this;
+            Route.permitAll("/api/user/**"),
+            Route.permitAll(HttpMethod.POST, "/api/user/token/refresh"),
+            Route.authenticated(HttpMethod.POST, "/api/user/logout"),
+            Route.authenticated(HttpMethod.POST, "/api/user/logout-all"),
+            Route.authenticated(HttpMethod.GET, "/api/user/sessions"),
+            Route.authenticated(HttpMethod.DELETE, "/api/user/sessions/{familyId}"),
+
+            Route.permitAll(HttpMethod.GET, "/login/oauth2/code/google/**"),
+            Route.permitAll(HttpMethod.GET, "/oauth2/authorization/google")
+            //                                ^^^^ Call this url to login with google account ^^^^
+    );
+
+    private final RouteTrie routeTrie = new RouteTrie(ROUTES);
+
+    public List<Route> getRoutes() {
+        return routeTrie.routes();
     }
 
     public boolean isPermitAllRequest(HttpServletRequest request) {
-        return permitAllMatchers.stream()
-                .anyMatch(matcher -> matcher.matches(request));
+        String path = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        if (!contextPath.isEmpty() && path.startsWith(contextPath))
+            path = path.substring(contextPath.length());
+
+        Route route = routeTrie.match(request.getMethod(), path);
+        return route != null && route.access() == RouteAccess.PERMIT_ALL;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,18 @@
+package com.example.kuby.security.filter;
+
+import org.springframework.http.HttpMethod;
+
+// A null method matches every method
+public record Route(HttpMethod method, String pattern, RouteAccess access) {
+    public static Route permitAll(HttpMethod method, String pattern) {
+        return new Route(method, pattern, RouteAccess.PERMIT_ALL);
+    }
+
+    public static Route permitAll(String pattern) {
+        return new Route(null, pattern, RouteAccess.PERMIT_ALL);
+    }
+
+    public static Route authenticated(HttpMethod method, String pattern) {
+        return new Route(method, pattern, RouteAccess.AUTHENTICATED);
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.kuby.security.filter;
+
+public enum RouteAccess {
+    PERMIT_ALL,
+    AUTHENTICATED
+}
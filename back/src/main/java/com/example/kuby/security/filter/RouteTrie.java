@@ -0,0 +1,193 @@
+package com.example.kuby.security.filter;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Routes compiled into one segment trie per HTTP method. Lookups walk the path in place, trying literal
+ * segments before {@code *}/{@code {var}} and those before a trailing {@code **}, so the most specific
+ * route wins regardless of declaration order.
+ */
+public final class RouteTrie {
+    private static final PathPatternParser PARSER = new PathPatternParser();
+
+    private final Map<String, Node> methodRoots = new HashMap<>();
+    private final Node anyMethodRoot = new Node();
+    private final List<Route> routes;
+
+    public RouteTrie(List<Route> routes) {
+        for (Route route : routes) {
+            PARSER.parse(route.pattern());
+            String[] segments = segments(route.pattern());
+            if (route.method() == null) {
+                insert(anyMethodRoot, segments, route);
+                for (HttpMethod method : HttpMethod.values())
+                    insert(methodRoots.computeIfAbsent(method.name(), name -> new Node()), segments, route);
+            } else {
+                insert(methodRoots.computeIfAbsent(route.method().name(), name -> new Node()), segments, route);
+            }
+        }
+        this.routes = sortBySpecificity(routes);
+    }
+
+    public Route match(String method, String path) {
+        Node root = methodRoots.getOrDefault(method, anyMethodRoot);
+        return match(root, path, 0);
+    }
+
+    // Most specific first, so first-match-wins consumers like Spring Security agree with the trie
+    public List<Route> routes() {
+        return routes;
+    }
+
+    private static Route match(Node node, String path, int position) {
+        int length = path.length();
+        while (position < length && path.charAt(position) == '/')
+            position++;
+
+        if (position == length)
+            return node.terminal != null ? node.terminal : node.catchAll;
+
+        int end = path.indexOf('/', position);
+        if (end < 0)
+            end = length;
+        int segmentLength = end - position;
+
+        int literal = node.find(path, position, segmentLength);
+        if (literal >= 0) {
+            Route route = match(node.literalChildren[literal], path, end);
+            if (route != null)
+                return route;
+        }
+
+        if (node.wildcard != null) {
+            Route route = match(node.wildcard, path, end);
+            if (route != null)
+                return route;
+        }
+
+        return node.catchAll;
+    }
+
+    private static void insert(Node root, String[] segments, Route route) {
+        Node node = root;
+        for (String segment : segments) {
+            if (segment.equals("**")) {
+                node.catchAll = preferMethodSpecific(node.catchAll, route);
+                return;
+            }
+            node = isWildcard(segment) ? node.wildcard() : node.literal(segment);
+        }
+        node.terminal = preferMethodSpecific(node.terminal, route);
+    }
+
+    private static Route preferMethodSpecific(Route existing, Route candidate) {
+        if (existing == null || (existing.method() == null && candidate.method() != null))
+            return candidate;
+        if (existing.method() != null && candidate.method() == null)
+            return existing;
+        throw new IllegalStateException("Duplicate route " + candidate.method() + " " + candidate.pattern());
+    }
+
+    private static String[] segments(String pattern) {
+        String[] segments = Arrays.stream(pattern.split("/"))
+                .filter(segment -> !segment.isEmpty())
+                .toArray(String[]::new);
+
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals("**") ? i != segments.length - 1 : !isWildcard(segment) && containsWildcard(segment))
+                throw new IllegalStateException("Unsupported route pattern " + pattern
+                        + ": wildcards must span whole segments and ** must come last");
+        }
+        return segments;
+    }
+
+    private static boolean isWildcard(String segment) {
+        return segment.equals("*") || (segment.startsWith("{") && segment.endsWith("}") && !segment.startsWith("{*"));
+    }
+
+    private static boolean containsWildcard(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('{') >= 0 || segment.indexOf('?') >= 0;
+    }
+
+    private static List<Route> sortBySpecificity(List<Route> routes) {
+        Map<Route, PathPattern> parsed = new HashMap<>();
+        routes.forEach(route -> parsed.put(route, PARSER.parse(route.pattern())));
+
+        List<Route> sorted = new ArrayList<>(routes);
+        sorted.sort(Comparator.<Route, PathPattern>comparing(parsed::get, PathPattern.SPECIFICITY_COMPARATOR)
+                .thenComparing(route -> route.method() == null));
+        return List.copyOf(sorted);
+    }
+
+    // Literals are kept in String order, so a path segment is binary searched in place without a substring
+    private static final class Node {
+        private String[] literals = new String[0];
+        private Node[] literalChildren = new Node[0];
+        private Node wildcard;
+        private Route terminal;
+        private Route catchAll;
+
+        private Node literal(String segment) {
+            int index = find(segment, 0, segment.length());
+            if (index >= 0)
+                return literalChildren[index];
+
+            int insertAt = -index - 1;
+            Node child = new Node();
+            literals = insert(literals, insertAt, segment, new String[literals.length + 1]);
+            literalChildren = insert(literalChildren, insertAt, child, new Node[literalChildren.length + 1]);
+            return child;
+        }
+
+        // Index of the literal equal to the path region, or -(insertion point + 1) like Arrays.binarySearch
+        private int find(String path, int position, int length) {
+            int low = 0;
+            int high = literals.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = compare(literals[middle], path, position, length);
+                if (comparison < 0)
+                    low = middle + 1;
+                else if (comparison > 0)
+                    high = middle - 1;
+                else
+                    return middle;
+            }
+            return -(low + 1);
+        }
+
+        // Same order as String.compareTo between the literal and the path region
+        private static int compare(String literal, String path, int position, int length) {
+            int common = Math.min(literal.length(), length);
+            for (int i = 0; i < common; i++) {
+                int difference = literal.charAt(i) - path.charAt(position + i);
+                if (difference != 0)
+                    return difference;
+            }
+            return literal.length() - length;
+        }
+
+        private static <T> T[] insert(T[] array, int index, T element, T[] grown) {
+            System.arraycopy(array, 0, grown, 0, index);
+            grown[index] = element;
+            System.arraycopy(array, index, grown, index + 1, array.length - index);
+            return grown;
+        }
+
+        private Node wildcard() {
+            if (wildcard == null)
+                wildcard = new Node();
+            return wildcard;
+        }
+    }
+}
@@ -7,11 +7,11 @@ import com.example.kuby.security.service.UserAuthenticationEntryPoint;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.annotation.web.configurers.AuthorizeHttpRequestsConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
@@ -38,22 +38,16 @@ public class SecurityFilter {
                 .sessionManagement(session ->
                         session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(authorize -> {
-                            authorize
-                                    .requestMatchers(HttpMethod.GET, "/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
-
-                                    .requestMatchers("/api/user/**").permitAll()
-                                    .requestMatchers(HttpMethod.POST, "/api/user/token/refresh").permitAll()
-
-                                    .requestMatchers(HttpMethod.GET, "/login/oauth2/code/google/**").permitAll()
-                                    .requestMatchers(HttpMethod.GET, "/oauth2/authorization/google").permitAll()
-                                    //                         ^^^^ Call this url to login with google account ^^^^
-                                    .anyRequest().authenticated();
-
-                            permitAllUrlConfig
-                                    .addPermitAllMatcher("/api/user/**")
-                                    .addPermitAllMatcher(HttpMethod.POST, "/api/user/token/refresh")
-                                    .addPermitAllMatcher(HttpMethod.GET, "/login/oauth2/code/google/**")
-                                    .addPermitAllMatcher(HttpMethod.GET, "/oauth2/authorization/google");
+                            for (Route route : permitAllUrlConfig.getRoutes()) {
+                                AuthorizeHttpRequestsConfigurer<HttpSecurity>.AuthorizedUrl matcher = route.method() == null
+                                        ? authorize.requestMatchers(route.pattern())
+                                        : authorize.requestMatchers(route.method(), route.pattern());
+                                if (route.access() == RouteAccess.PERMIT_ALL)
+                                    matcher.permitAll();
+                                else
+                                    matcher.authenticated();
+                            }
+                            authorize.anyRequest().authenticated();
                         }
                 )
                 .oauth2Login(auth -> {
@@ -0,0 +1,128 @@
+package com.example.kuby.security.keys;
+
+import com.auth0.jwt.algorithms.Algorithm;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * ES256 keys read from a directory: {@code <kid>.pub} holds an X.509 PEM public key and {@code <kid>.key}
+ * the matching PKCS#8 PEM private key. The greatest kid that has a private key signs, every public key
+ * verifies and is published in the JWKS. Keys rotate by adding a new pair and later removing the retired
+ * .pub file, the directory is re-read periodically. Without a directory a key pair is generated at startup,
+ * which only suits a single node since neither other nodes nor a restarted one can verify its tokens.
+ */
+@Slf4j
+class Es256KeySource implements KeySource {
+    private static final Pattern KID = Pattern.compile("[A-Za-z0-9._-]+");
+
+    private final Path keyDir;
+    private volatile KeyRing ring;
+
+    Es256KeySource(Path keyDir) {
+        this.keyDir = keyDir;
+        if (keyDir == null) {
+            log.warn("No ES256 key directory configured, signing with an ephemeral key pair");
+            this.ring = ephemeral();
+        } else {
+            this.ring = load(keyDir);
+        }
+    }
+
+    @Override
+    public KeyRing ring() {
+        return ring;
+    }
+
+    @Override
+    public void reload() {
+        if (keyDir == null)
+            return;
+        try {
+            ring = load(keyDir);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to reload signing keys from {}, keeping the current ones", keyDir, ex);
+        }
+    }
+
+    private static KeyRing load(Path keyDir) {
+        Map<String, KeyRing.Key> keys = new HashMap<>();
+        TreeMap<String, Algorithm> signers = new TreeMap<>();
+
+        try (Stream<Path> files = Files.list(keyDir)) {
+            for (Path publicKeyFile : files.filter(file -> file.getFileName().toString().endsWith(".pub")).toList()) {
+                String fileName = publicKeyFile.getFileName().toString();
+                String kid = fileName.substring(0, fileName.length() - ".pub".length());
+                if (!KID.matcher(kid).matches())
+                    throw new IllegalStateException("Invalid key id " + kid + ", use letters, digits, '.', '_' and '-'");
+
+                ECPublicKey publicKey = (ECPublicKey) keyFactory().generatePublic(new X509EncodedKeySpec(pem(publicKeyFile)));
+                if (publicKey.getParams().getCurve().getField().getFieldSize() != 256)
+                    throw new IllegalStateException("Key " + kid + " is not a P-256 key");
+
+                Path privateKeyFile = keyDir.resolve(kid + ".key");
+                ECPrivateKey privateKey = Files.exists(privateKeyFile)
+                        ? (ECPrivateKey) keyFactory().generatePrivate(new PKCS8EncodedKeySpec(pem(privateKeyFile)))
+                        : null;
+
+                Algorithm algorithm = Algorithm.ECDSA256(publicKey, privateKey);
+                keys.put(kid, new KeyRing.Key(algorithm, publicKey));
+                if (privateKey != null)
+                    signers.put(kid, algorithm);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to read signing keys from " + keyDir, ex);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to parse signing keys from " + keyDir, ex);
+        }
+
+        if (signers.isEmpty())
+            throw new IllegalStateException("No ES256 private key found in " + keyDir);
+        return new KeyRing(signers.lastKey(), signers.lastEntry().getValue(), null, keys, List.of());
+    }
+
+    private static KeyRing ephemeral() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            KeyPair keyPair = generator.generateKeyPair();
+            ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+            Algorithm algorithm = Algorithm.ECDSA256(publicKey, (ECPrivateKey) keyPair.getPrivate());
+
+            String kid = "ephemeral-" + System.currentTimeMillis();
+            return new KeyRing(kid, algorithm, null, Map.of(kid, new KeyRing.Key(algorithm, publicKey)), List.of());
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to generate an ES256 key pair", ex);
+        }
+    }
+
+    private static byte[] pem(Path file) throws IOException {
+        String base64 = Files.readString(file)
+                .replaceAll("-----(BEGIN|END) [A-Z ]+-----", "")
+                .replaceAll("\\s", "");
+        return Base64.getDecoder().decode(base64);
+    }
+
+    private static KeyFactory keyFactory() throws GeneralSecurityException {
+        return KeyFactory.getInstance("EC");
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.kuby.security.keys;
+
+import com.auth0.jwt.algorithms.Algorithm;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * HMAC keys derived from the secret and a rotation epoch, so every node computes the same ring without
+ * coordination: the current epoch signs, the next one is already accepted to absorb clock skew between
+ * nodes, and {@code retiringCount} previous ones keep verifying tokens issued before the rotation.
+ * Secrets listed as previous stay verifiable after the secret itself was replaced, tokens without a kid
+ * are verified with the plain secrets.
+ */
+class HmacKeySource implements KeySource {
+    private final List<String> secrets;
+    private final long rotationPeriodMillis;
+    private final int retiringCount;
+    private final LongSupplier clock;
+    private volatile Epoch current;
+
+    HmacKeySource(String secret, List<String> previousSecrets, Duration rotationPeriod, int retiringCount, LongSupplier clock) {
+        if (rotationPeriod.toMillis() <= 0)
+            throw new IllegalArgumentException("Key rotation period must be positive");
+        if (retiringCount < 0)
+            throw new IllegalArgumentException("Retiring key count can't be negative");
+
+        this.secrets = new ArrayList<>(previousSecrets.size() + 1);
+        this.secrets.add(secret);
+        previousSecrets.stream().filter(previous -> !previous.isBlank()).forEach(this.secrets::add);
+        this.rotationPeriodMillis = rotationPeriod.toMillis();
+        this.retiringCount = retiringCount;
+        this.clock = clock;
+        this.current = build(currentEpoch());
+    }
+
+    @Override
+    public KeyRing ring() {
+        Epoch ring = current;
+        long epoch = currentEpoch();
+        if (epoch == ring.epoch())
+            return ring.ring();
+
+        synchronized (this) {
+            if (epoch != current.epoch())
+                current = build(epoch);
+            return current.ring();
+        }
+    }
+
+    private long currentEpoch() {
+        return Math.floorDiv(clock.getAsLong(), rotationPeriodMillis);
+    }
+
+    private Epoch build(long epoch) {
+        Map<String, KeyRing.Key> keys = new HashMap<>();
+        List<KeyRing.Key> legacyKeys = new ArrayList<>(secrets.size());
+        for (String secret : secrets) {
+            String fingerprint = fingerprint(secret);
+            for (long keyEpoch = epoch - retiringCount; keyEpoch <= epoch + 1; keyEpoch++)
+                keys.put(kid(fingerprint, keyEpoch), new KeyRing.Key(Algorithm.HMAC256(derive(secret, keyEpoch))));
+            legacyKeys.add(new KeyRing.Key(Algorithm.HMAC256(secret)));
+        }
+
+        String activeKid = kid(fingerprint(secrets.get(0)), epoch);
+        HmacFastSigner fastSigner = new HmacFastSigner(derive(secrets.get(0), epoch), activeKid);
+        return new Epoch(epoch, new KeyRing(activeKid, keys.get(activeKid).algorithm(), fastSigner, keys, legacyKeys));
+    }
+
+    private static String kid(String fingerprint, long epoch) {
+        return fingerprint + "." + epoch;
+    }
+
+    private static byte[] derive(String secret, long epoch) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac.doFinal(("jwt-signing-key:" + epoch).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("HmacSHA256 is not supported", ex);
+        }
+    }
+
+    private static String fingerprint(String secret) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 8);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+
+    private record Epoch(long epoch, KeyRing ring) {
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.kuby.security.keys;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.interfaces.ECPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Serialized once per key ring, the ETag changes only when the published keys do
+public record JwksDocument(String json, String etag) {
+
+    static JwksDocument of(Map<String, KeyRing.Key> keys) {
+        StringBuilder json = new StringBuilder("{\"keys\":[");
+        new TreeMap<>(keys).forEach((kid, key) -> {
+            ECPublicKey publicKey = key.publicKey();
+            if (publicKey == null)
+                return;
+
+            if (json.charAt(json.length() - 1) == '}')
+                json.append(',');
+            json.append("{\"kty\":\"EC\",\"crv\":\"P-256\",\"use\":\"sig\",\"alg\":\"ES256\"")
+                    .append(",\"kid\":\"").append(kid).append('"')
+                    .append(",\"x\":\"").append(coordinate(publicKey.getW().getAffineX())).append('"')
+                    .append(",\"y\":\"").append(coordinate(publicKey.getW().getAffineY())).append("\"}");
+        });
+        String body = json.append("]}").toString();
+        return new JwksDocument(body, "\"" + digest(body) + "\"");
+    }
+
+    // JWK coordinates are unsigned big-endian and padded to the field size
+    private static String coordinate(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        byte[] padded = new byte[32];
+        int length = Math.min(bytes.length, 32);
+        System.arraycopy(bytes, bytes.length - length, padded, 32 - length, length);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(padded);
+    }
+
+    private static String digest(String body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 16));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+}
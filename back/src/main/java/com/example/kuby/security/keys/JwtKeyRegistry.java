@@ -0,0 +1,122 @@
+package com.example.kuby.security.keys;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-built signers and thread-safe verifiers indexed by the kid header, so a verifier lookup is a single
+ * map hit. Tokens are signed by the configured source. In ES256 mode HMAC tokens stay verifiable as long as
+ * {@code security.jwt.es256.accept-hmac} is on, so switching modes doesn't log everybody out.
+ */
+@Component
+public class JwtKeyRegistry {
+    private final KeySource signing;
+    private final KeySource verificationOnly;
+    private volatile JwksSnapshot jwks;
+
+    @Autowired
+    public JwtKeyRegistry(@Value("${security.jwt.signing:hs256}") SigningAlgorithm signingAlgorithm,
+                          @Value("${security.jwt.token.secret-key:secret-key}") String secret,
+                          @Value("${security.jwt.token.previous-secret-keys:}") List<String> previousSecrets,
+                          @Value("${security.jwt.key.rotation.period.hours:24}") long rotationPeriodHours,
+                          @Value("${security.jwt.key.retiring.count:7}") int retiringCount,
+                          @Value("${security.jwt.es256.key-dir:}") String es256KeyDir,
+                          @Value("${security.jwt.es256.accept-hmac:true}") boolean acceptHmac) {
+        KeySource hmac = new HmacKeySource(secret, previousSecrets, Duration.ofHours(rotationPeriodHours), retiringCount,
+                System::currentTimeMillis);
+        if (signingAlgorithm == SigningAlgorithm.ES256) {
+            this.signing = new Es256KeySource(es256KeyDir.isBlank() ? null : Path.of(es256KeyDir));
+            this.verificationOnly = acceptHmac ? hmac : null;
+        } else {
+            this.signing = hmac;
+            this.verificationOnly = null;
+        }
+    }
+
+    JwtKeyRegistry(KeySource signing, KeySource verificationOnly) {
+        this.signing = signing;
+        this.verificationOnly = verificationOnly;
+    }
+
+    public String sign(JWTCreator.Builder builder) {
+        KeyRing ring = signing.ring();
+        return builder.withKeyId(ring.activeKid()).sign(ring.signer());
+    }
+
+    // Claims are written in map order, the fast path is taken whenever the active key is an HMAC key
+    public String sign(String subject, Map<String, String> claims, Instant issuedAt, Instant expiresAt) {
+        KeyRing ring = signing.ring();
+        if (ring.fastSigner() != null)
+            return ring.fastSigner().sign(subject, claims, issuedAt, expiresAt);
+
+        JWTCreator.Builder builder = JWT.create().withSubject(subject);
+        claims.forEach((name, value) -> {
+            if (value != null)
+                builder.withClaim(name, value);
+        });
+        return builder.withIssuedAt(issuedAt)
+                .withExpiresAt(expiresAt)
+                .withKeyId(ring.activeKid())
+                .sign(ring.signer());
+    }
+
+    public DecodedJWT verify(String token) {
+        return verify(JWT.decode(token), false);
+    }
+
+    public DecodedJWT verifyIgnoringExpiry(String token) {
+        return verify(JWT.decode(token), true);
+    }
+
+    public JwksDocument jwks() {
+        KeyRing ring = signing.ring();
+        JwksSnapshot snapshot = jwks;
+        if (snapshot == null || snapshot.ring() != ring) {
+            snapshot = new JwksSnapshot(ring, JwksDocument.of(ring.keys()));
+            jwks = snapshot;
+        }
+        return snapshot.document();
+    }
+
+    @Scheduled(fixedDelayString = "${security.jwt.es256.reload.ms:60000}")
+    public void reloadKeys() {
+        signing.reload();
+    }
+
+    String activeKeyId() {
+        return signing.ring().activeKid();
+    }
+
+    private DecodedJWT verify(DecodedJWT decodedJWT, boolean ignoreExpiry) {
+        List<KeyRing.Key> keys = signing.ring().keysOf(decodedJWT.getKeyId());
+        if (keys.isEmpty() && verificationOnly != null)
+            keys = verificationOnly.ring().keysOf(decodedJWT.getKeyId());
+        if (keys.isEmpty())
+            throw new JWTVerificationException("Unknown signing key " + decodedJWT.getKeyId());
+
+        JWTVerificationException failure = null;
+        for (KeyRing.Key key : keys) {
+            try {
+                return (ignoreExpiry ? key.expiryIgnoringVerifier() : key.verifier()).verify(decodedJWT);
+            } catch (JWTVerificationException ex) {
+                failure = ex;
+            }
+        }
+        throw failure;
+    }
+
+    private record JwksSnapshot(KeyRing ring, JwksDocument document) {
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.kuby.security.keys;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+
+import java.security.interfaces.ECPublicKey;
+import java.util.List;
+import java.util.Map;
+
+// Immutable view of the keys a source trusts at one point in time, replaced as a whole on rotation.
+// fastSigner is only set when the active key is an HMAC key.
+record KeyRing(String activeKid, Algorithm signer, HmacFastSigner fastSigner, Map<String, Key> keys, List<Key> legacyKeys) {
+    // Refreshing accepts an access token no matter how long ago it expired
+    private static final long IGNORED_EXPIRY_LEEWAY_SECONDS = Integer.MAX_VALUE;
+
+    List<Key> keysOf(String kid) {
+        if (kid == null)
+            return legacyKeys;
+        Key key = keys.get(kid);
+        return key == null ? List.of() : List.of(key);
+    }
+
+    // publicKey is only set for asymmetric keys, those are the ones published as JWKS
+    record Key(Algorithm algorithm, ECPublicKey publicKey, JWTVerifier verifier, JWTVerifier expiryIgnoringVerifier) {
+        Key(Algorithm algorithm, ECPublicKey publicKey) {
+            this(algorithm, publicKey,
+                    JWT.require(algorithm).build(),
+                    JWT.require(algorithm).acceptExpiresAt(IGNORED_EXPIRY_LEEWAY_SECONDS).build());
+        }
+
+        Key(Algorithm algorithm) {
+            this(algorithm, null);
+        }
+    }
+}
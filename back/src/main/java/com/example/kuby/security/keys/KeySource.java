@@ -0,0 +1,8 @@
+package com.example.kuby.security.keys;
+
+interface KeySource {
+    KeyRing ring();
+
+    default void reload() {
+    }
+}
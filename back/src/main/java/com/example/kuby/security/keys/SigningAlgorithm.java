@@ -0,0 +1,6 @@
+package com.example.kuby.security.keys;
+
+public enum SigningAlgorithm {
+    HS256,
+    ES256
+}
@@ -1,24 +0,0 @@
-package com.example.kuby.security.models.entity.tokens;
-
-import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
-import lombok.Builder;
-import lombok.Data;
-import lombok.NoArgsConstructor;
-
-import java.time.Instant;
-import java.util.UUID;
-
-@AllArgsConstructor
-@NoArgsConstructor
-@Builder
-@Entity
-@Data
-@org.springframework.data.relational.core.mapping.Table(name = "refresh_token")
-public class RefreshToken {
-    @Id
-    @GeneratedValue(strategy = GenerationType.UUID)
-    @Column(nullable = false, updatable = false, unique = true)
-    private UUID id;
-    private Instant expiresAt;
-}
@@ -0,0 +1,26 @@
+package com.example.kuby.security.models.principal;
+
+import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.security.models.enums.Provider;
+import com.example.kuby.security.models.enums.UserRoles;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public record UserPrincipal(UUID id, String email, Provider provider, UserRoles roles) {
+    private static final List<GrantedAuthority> ADMIN_AUTHORITIES =
+            List.of(new SimpleGrantedAuthority("ROLE_ADMIN"), new SimpleGrantedAuthority("ROLE_USER"));
+    private static final List<GrantedAuthority> USER_AUTHORITIES =
+            List.of(new SimpleGrantedAuthority("ROLE_USER"));
+
+    public static UserPrincipal from(UserEntity user) {
+        return new UserPrincipal(user.getId(), user.getEmail(), user.getProvider(), user.getRoles());
+    }
+
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return roles == UserRoles.ADMIN ? ADMIN_AUTHORITIES : USER_AUTHORITIES;
+    }
+}
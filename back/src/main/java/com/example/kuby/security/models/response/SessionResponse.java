@@ -0,0 +1,13 @@
+package com.example.kuby.security.models.response;
+
+import com.example.kuby.security.session.TokenFamily;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public record SessionResponse(UUID id, String device, Instant createdAt, Instant lastRefreshedAt, Instant expiresAt, boolean current) {
+    public static SessionResponse from(TokenFamily family, UUID currentFamilyId) {
+        return new SessionResponse(family.id(), family.device(), family.createdAt(), family.updatedAt(),
+                family.refreshExpiresAt(), family.id().equals(currentFamilyId));
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.kuby.security.ratelimiter;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class GcraRateLimitAlgorithm extends ScriptedRateLimitAlgorithm {
+    public GcraRateLimitAlgorithm(StringRedisTemplate redisTemplate) {
+        super(redisTemplate, "rate_limit_gcra", "global_rate_limit:gcra:", "global_blocked:gcra:");
+    }
+
+    @Override
+    public String name() {
+        return "gcra";
+    }
+}
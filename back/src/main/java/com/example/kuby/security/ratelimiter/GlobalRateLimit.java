@@ -1,11 +1,25 @@
 package com.example.kuby.security.ratelimiter;
+import com.example.kuby.redis.RedisBatch;
+import com.example.kuby.redis.RedisBatchFactory;
+import com.example.kuby.redis.RedisCircuitBreaker;
+import com.example.kuby.redis.RedisFallback;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class GlobalRateLimit {
@@ -22,56 +36,177 @@ public class GlobalRateLimit {
     @Value("${frontend.server.ip}")
     private String FRONTEND_SERVER_IP;
 
-    private final StringRedisTemplate redisTemplate;
+    @Value("${global.rate.algorithm:sliding-log}")
+    private String ALGORITHM;
+
+    @Value("${global.rate.shadow.algorithm:}")
+    private String SHADOW_ALGORITHM;
+
+    @Value("${global.rate.local.enabled:true}")
+    private boolean LOCAL_TIER_ENABLED;
+
+    @Value("${global.rate.local.lease.size:10}")
+    private int LOCAL_LEASE_SIZE;
+
+    @Value("${global.rate.local.lease.ttl:1000}")
+    private long LOCAL_LEASE_TTL;
+
+    @Value("${global.rate.fallback:local}")
+    private RedisFallback FALLBACK;
+
+    private static final LocalRateLimitTier.Ticket UNLIMITED = LocalRateLimitTier.Ticket.decided(RateLimitDecision.unlimited());
+
+    private final List<RateLimitAlgorithm> algorithms;
+    private final MeterRegistry meterRegistry;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final RedisBatchFactory redisBatchFactory;
+    private final LocalApproximateRateLimiter fallbackLimiter;
+
+    private RateLimitPolicy policy;
+    private RateLimitAlgorithm enforcing;
+    private RateLimitAlgorithm shadow;
+    private LocalRateLimitTier localTier;
+    private ThreadPoolExecutor shadowExecutor;
+    private Counter shadowAgreements;
+    private Counter shadowCandidateStricter;
+    private Counter shadowCandidateLooser;
+    private Counter shadowDropped;
+
+    @PostConstruct
+    void init() {
+        policy = new RateLimitPolicy(RATE_LIMIT, RATE_DURATION, BLOCK_DURATION);
+        enforcing = findAlgorithm(ALGORITHM);
+        if (LOCAL_TIER_ENABLED)
+            localTier = new LocalRateLimitTier(LOCAL_LEASE_SIZE, LOCAL_LEASE_TTL);
+
+        if (SHADOW_ALGORITHM.isBlank())
+            return;
+
+        shadow = findAlgorithm(SHADOW_ALGORITHM);
+        if (shadow == enforcing)
+            throw new IllegalStateException("Shadow rate limit algorithm must differ from the enforcing one");
+
+        shadowExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024), new ThreadPoolExecutor.AbortPolicy());
+        shadowAgreements = shadowCounter("agree");
+        shadowCandidateStricter = shadowCounter("candidate_stricter");
+        shadowCandidateLooser = shadowCounter("candidate_looser");
+        shadowDropped = shadowCounter("dropped");
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (shadowExecutor != null)
+            shadowExecutor.shutdownNow();
+    }
 
-    private static final String RATE_LIMIT_PREFIX = "global_rate_limit:";
-    private static final String BLOCKED_PREFIX = "global_blocked:";
+    public boolean allowRequest(String ipAddress, long currentTime) {
+        return check(ipAddress, currentTime).allowed();
+    }
 
+    public RateLimitDecision check(String ipAddress, long currentTime) {
+        LocalRateLimitTier.Ticket ticket = begin(ipAddress, currentTime);
+        if (ticket.decision() != null)
+            return ticket.decision();
 
-    public boolean isBlocked(String ipAddress, long currentTime) {
-        if (ipAddress.equals(FRONTEND_SERVER_IP)) return false;
+        RedisBatch batch = redisBatchFactory.create();
+        RedisBatch.Reply<RateLimitDecision> decision = check(batch, ticket, currentTime);
+        batch.execute();
+        return decision.get();
+    }
 
-        String blockedKey = BLOCKED_PREFIX + ipAddress;
-        String unblockTimeStr = redisTemplate.opsForValue().get(blockedKey);
+    // Decides without Redis when it can. Only a ticket without a decision needs check(batch, ...), so callers
+    // build a Redis batch only when the shared limiter is really asked.
+    public LocalRateLimitTier.Ticket begin(String ipAddress, long currentTime) {
+        if (ipAddress.equals(FRONTEND_SERVER_IP)) return UNLIMITED;
+        if (localTier == null) return LocalRateLimitTier.Ticket.shared(ipAddress);
 
-        if (unblockTimeStr != null) {
-            long unblockTime = Long.parseLong(unblockTimeStr);
-            if (currentTime > unblockTime) {
-                redisTemplate.delete(blockedKey);
-                return false;
-            }
-            return true;
-        }
-        return false;
+        LocalRateLimitTier.Ticket ticket = localTier.begin(ipAddress, currentTime);
+        if (ticket.decision() != null)
+            decided(ipAddress, currentTime, ticket.decision());
+        return ticket;
     }
 
-    public boolean allowRequest(String ipAddress, long currentTime) {
-        if (isBlocked(ipAddress, currentTime)) {
-            return false;
+    // Adds the Redis part of an undecided check to the batch, the reply must be read once after the batch was executed
+    public RedisBatch.Reply<RateLimitDecision> check(RedisBatch batch, LocalRateLimitTier.Ticket ticket, long currentTime) {
+        String ipAddress = ticket.clientKey();
+        if (localTier == null) {
+            RedisBatch.Reply<RateLimitDecision> shared = enforcing.acquire(batch, ipAddress, currentTime, policy, 1, null);
+            return () -> decided(ipAddress, currentTime,
+                    batch.isFailed() ? fallbackDecision(ipAddress, currentTime) : shared.get());
         }
 
-        String rateLimitKey = RATE_LIMIT_PREFIX + ipAddress;
-        Long requestCount = redisTemplate.opsForZSet().zCard(rateLimitKey);
+        enforcing.release(batch, ipAddress, currentTime, policy, ticket.releasePermits(), ticket.releaseLeaseId());
+        RedisBatch.Reply<RateLimitDecision> shared = enforcing.acquire(batch, ipAddress, currentTime, policy, ticket.permits(), ticket.leaseId());
+        return () -> {
+            if (batch.isFailed()) {
+                localTier.abort(ticket);
+                return decided(ipAddress, currentTime, fallbackDecision(ipAddress, currentTime));
+            }
+            return decided(ipAddress, currentTime, localTier.complete(ticket, currentTime, shared.get()));
+        };
+    }
 
-        if (requestCount == null) {
-            requestCount = 0L;
-        }
+    private RateLimitDecision decided(String ipAddress, long currentTime, RateLimitDecision decision) {
+        if (shadow != null)
+            evaluateInShadow(ipAddress, currentTime, decision);
+        return decision;
+    }
 
-        cleanUpRequestCounts(rateLimitKey, currentTime);
+    @Scheduled(fixedDelayString = "${global.rate.local.lease.ttl:1000}")
+    public void evictIdleLocalBuckets() {
+        if (localTier != null && circuitBreaker.getState() == RedisCircuitBreaker.State.CLOSED)
+            localTier.evictIdle(System.currentTimeMillis(), enforcing, policy);
+    }
 
-        if (requestCount >= RATE_LIMIT) {
-            String blockedKey = BLOCKED_PREFIX + ipAddress;
-            redisTemplate.opsForValue().set(blockedKey, String.valueOf(currentTime + BLOCK_DURATION), BLOCK_DURATION, TimeUnit.MILLISECONDS);
-            return false;
-        }
+    private RateLimitDecision fallbackDecision(String ipAddress, long currentTime) {
+        return switch (FALLBACK) {
+            case FAIL_OPEN -> RateLimitDecision.allowedLocally();
+            case FAIL_CLOSED -> RateLimitDecision.blocked(currentTime + policy.blockDuration());
+            case LOCAL -> {
+                long retryAt = fallbackLimiter.tryAcquire("global:" + ipAddress, currentTime,
+                        policy.window(), policy.limit(), 1);
+                yield retryAt == 0 ? RateLimitDecision.allowedLocally() : RateLimitDecision.blocked(retryAt);
+            }
+        };
+    }
 
-        redisTemplate.opsForZSet().add(rateLimitKey, String.valueOf(currentTime), currentTime);
-        redisTemplate.expire(rateLimitKey, RATE_DURATION, TimeUnit.SECONDS);
+    private void evaluateInShadow(String ipAddress, long currentTime, RateLimitDecision enforced) {
+        try {
+            shadowExecutor.execute(() -> {
+                try {
+                    RateLimitDecision candidate = circuitBreaker.execute("global_rate_limit_shadow",
+                            () -> shadow.evaluate(ipAddress, currentTime, policy), () -> null);
+                    if (candidate == null)
+                        shadowDropped.increment();
+                    else if (candidate.allowed() == enforced.allowed())
+                        shadowAgreements.increment();
+                    else if (enforced.allowed())
+                        shadowCandidateStricter.increment();
+                    else
+                        shadowCandidateLooser.increment();
+                } catch (RuntimeException ex) {
+                    log.debug("Shadow rate limit evaluation with {} failed", shadow.name(), ex);
+                    shadowDropped.increment();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            shadowDropped.increment();
+        }
+    }
 
-        return true;
+    private RateLimitAlgorithm findAlgorithm(String name) {
+        return algorithms.stream()
+                .filter(algorithm -> algorithm.name().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Unknown rate limit algorithm: " + name));
     }
 
-    private void cleanUpRequestCounts(String rateLimitKey, long currentTime) {
-        redisTemplate.opsForZSet().removeRangeByScore(rateLimitKey, 0, currentTime - RATE_DURATION);
+    private Counter shadowCounter(String outcome) {
+        return Counter.builder("global_rate_limit.shadow")
+                .tag("enforcing", enforcing.name())
+                .tag("candidate", shadow.name())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
     }
 }
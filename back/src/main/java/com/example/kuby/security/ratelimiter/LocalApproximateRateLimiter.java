@@ -0,0 +1,43 @@
+package com.example.kuby.security.ratelimiter;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Per-node fixed window counters used while Redis is unreachable, so each node enforces the limit on its own
+@Component
+public class LocalApproximateRateLimiter {
+    private final Cache<String, Window> windows;
+
+    public LocalApproximateRateLimiter(@Value("${ratelimit.local.fallback.max-size:100000}") long maxSize,
+                                       @Value("${ratelimit.local.fallback.idle.seconds:600}") long idleSeconds) {
+        this.windows = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(Duration.ofSeconds(idleSeconds))
+                .build();
+    }
+
+    // Returns 0 when the call fits into the current window, otherwise the time the window resets
+    public long tryAcquire(String key, long currentTime, long window, int limit, int weight) {
+        Window counter = windows.get(key, k -> new Window());
+        synchronized (counter) {
+            if (currentTime - counter.startedAt >= window) {
+                counter.startedAt = currentTime;
+                counter.count = 0;
+            }
+            if (counter.count + weight > limit)
+                return counter.startedAt + window;
+
+            counter.count += weight;
+            return 0;
+        }
+    }
+
+    private static final class Window {
+        private long startedAt;
+        private long count;
+    }
+}
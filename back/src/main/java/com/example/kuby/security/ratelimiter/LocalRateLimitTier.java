@@ -0,0 +1,180 @@
+package com.example.kuby.security.ratelimiter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Per-node token buckets that lease permits from the shared limiter in chunks of {@code leaseSize}.
+ * Permits are reserved in Redis before they are spent locally, so a node never admits more than the
+ * shared limiter granted; it can only spend a leased permit up to {@code leaseTtl} later than Redis
+ * accounted for it. That shifts at most one lease into the next window, which bounds the overshoot
+ * to {@code leaseSize} requests per client per node. Unused permits go back when a lease expires.
+ * <p>
+ * Deciding from a bucket allocates nothing: tickets of local decisions are preallocated, and buckets are
+ * keyed by the client key string the caller already holds, whose lookup only hashes it. Packing addresses
+ * into longs would need boxing or a hand-written primitive map, and a lease needs the string for its Redis
+ * keys anyway.
+ */
+@Slf4j
+public class LocalRateLimitTier {
+    private final int leaseSize;
+    private final long leaseTtl;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    public LocalRateLimitTier(int leaseSize, long leaseTtl) {
+        if (leaseSize < 1)
+            throw new IllegalArgumentException("Lease size must be positive");
+        this.leaseSize = leaseSize;
+        this.leaseTtl = leaseTtl;
+    }
+
+    public RateLimitDecision acquire(String clientKey, long currentTime, RateLimitAlgorithm algorithm, RateLimitPolicy policy) {
+        Ticket ticket = begin(clientKey, currentTime);
+        if (ticket.decision() != null)
+            return ticket.decision();
+
+        try {
+            algorithm.release(clientKey, currentTime, policy, ticket.releasePermits(), ticket.releaseLeaseId());
+            return complete(ticket, currentTime, algorithm.acquire(clientKey, currentTime, policy, ticket.permits(), ticket.leaseId()));
+        } catch (RuntimeException ex) {
+            abort(ticket);
+            throw ex;
+        }
+    }
+
+    // Decides locally when possible, otherwise tells the caller what to ask the shared limiter for.
+    // Only one caller per client leases at a time, the rest ask for a single permit so the bound holds.
+    public Ticket begin(String clientKey, long currentTime) {
+        while (true) {
+            Bucket bucket = buckets.computeIfAbsent(clientKey, key -> new Bucket());
+            synchronized (bucket) {
+                if (!bucket.evicted)
+                    return begin(bucket, clientKey, currentTime);
+            }
+        }
+    }
+
+    public RateLimitDecision complete(Ticket ticket, long currentTime, RateLimitDecision shared) {
+        Bucket bucket = buckets.get(ticket.clientKey());
+        if (bucket == null)
+            return shared;
+
+        synchronized (bucket) {
+            if (ticket.lease())
+                bucket.leasing = false;
+
+            if (!shared.allowed()) {
+                bucket.blockedUntil = shared.blockedUntil();
+                bucket.denial = Ticket.decided(shared);
+                return shared;
+            }
+
+            if (ticket.lease()) {
+                bucket.permits += shared.granted() - 1;
+                bucket.leaseExpiresAt = currentTime + leaseTtl;
+                bucket.leaseId = ticket.leaseId();
+            }
+            return shared;
+        }
+    }
+
+    public void abort(Ticket ticket) {
+        if (!ticket.lease())
+            return;
+
+        Bucket bucket = buckets.get(ticket.clientKey());
+        if (bucket != null) {
+            synchronized (bucket) {
+                bucket.leasing = false;
+            }
+        }
+    }
+
+    private Ticket begin(Bucket bucket, String clientKey, long currentTime) {
+        bucket.lastUsedAt = currentTime;
+
+        if (bucket.blockedUntil > currentTime)
+            return bucket.denial;
+
+        if (bucket.permits > 0 && currentTime < bucket.leaseExpiresAt) {
+            bucket.permits--;
+            return Ticket.ALLOWED_LOCALLY;
+        }
+
+        if (isLeasing(bucket, currentTime))
+            return Ticket.shared(clientKey);
+
+        int expiredPermits = bucket.permits;
+        String expiredLeaseId = bucket.leaseId;
+        bucket.permits = 0;
+        bucket.leaseId = null;
+        bucket.leasing = true;
+        bucket.leaseStartedAt = currentTime;
+        return new Ticket(clientKey, null, leaseSize, expiredPermits, expiredLeaseId,
+                currentTime + "-" + Long.toHexString(ThreadLocalRandom.current().nextLong()), true);
+    }
+
+    public void evictIdle(long currentTime, RateLimitAlgorithm algorithm, RateLimitPolicy policy) {
+        Iterator<Map.Entry<String, Bucket>> iterator = buckets.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Bucket> entry = iterator.next();
+            Bucket bucket = entry.getValue();
+            synchronized (bucket) {
+                if (isLeasing(bucket, currentTime) || currentTime < bucket.leaseExpiresAt || currentTime < bucket.blockedUntil
+                        || currentTime - bucket.lastUsedAt < leaseTtl)
+                    continue;
+
+                if (bucket.permits > 0) {
+                    try {
+                        algorithm.release(entry.getKey(), currentTime, policy, bucket.permits, bucket.leaseId);
+                    } catch (RuntimeException ex) {
+                        log.debug("Failed to return {} leased permits of {}", bucket.permits, entry.getKey(), ex);
+                    }
+                    bucket.permits = 0;
+                }
+                bucket.evicted = true;
+                iterator.remove();
+            }
+        }
+    }
+
+    // A lease whose caller never completed it stops counting once it would have expired anyway
+    private boolean isLeasing(Bucket bucket, long currentTime) {
+        return bucket.leasing && currentTime - bucket.leaseStartedAt < leaseTtl;
+    }
+
+    int size() {
+        return buckets.size();
+    }
+
+    private static final class Bucket {
+        private int permits;
+        private String leaseId;
+        private long leaseExpiresAt;
+        private long blockedUntil;
+        private long lastUsedAt;
+        private Ticket denial;
+        private boolean leasing;
+        private long leaseStartedAt;
+        private boolean evicted;
+    }
+
+    public record Ticket(String clientKey, RateLimitDecision decision, int permits, int releasePermits,
+                         String releaseLeaseId, String leaseId, boolean lease) {
+        private static final Ticket ALLOWED_LOCALLY = decided(RateLimitDecision.allowedLocally());
+
+        // Decided tickets never go back to complete or abort, so they don't name their client
+        public static Ticket decided(RateLimitDecision decision) {
+            return new Ticket(null, decision, 0, 0, null, null, false);
+        }
+
+        // Asks the shared limiter for a single permit without leasing
+        public static Ticket shared(String clientKey) {
+            return new Ticket(clientKey, null, 1, 0, null, null, false);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.kuby.security.ratelimiter;
+
+import com.example.kuby.redis.RedisBatch;
+
+public interface RateLimitAlgorithm {
+    String name();
+
+    // leaseId names the permits granted to one lease so exactly those can be released later, null for one-off acquires
+    RateLimitDecision acquire(String clientKey, long currentTime, RateLimitPolicy policy, int permits, String leaseId);
+
+    void release(String clientKey, long currentTime, RateLimitPolicy policy, int permits, String leaseId);
+
+    default RateLimitDecision evaluate(String clientKey, long currentTime, RateLimitPolicy policy) {
+        return acquire(clientKey, currentTime, policy, 1, null);
+    }
+
+    // Algorithms that don't keep their state in Redis run when the reply is read
+    default RedisBatch.Reply<RateLimitDecision> acquire(RedisBatch batch, String clientKey, long currentTime,
+                                                        RateLimitPolicy policy, int permits, String leaseId) {
+        return () -> acquire(clientKey, currentTime, policy, permits, leaseId);
+    }
+
+    default void release(RedisBatch batch, String clientKey, long currentTime, RateLimitPolicy policy,
+                         int permits, String leaseId) {
+        release(clientKey, currentTime, policy, permits, leaseId);
+    }
+}
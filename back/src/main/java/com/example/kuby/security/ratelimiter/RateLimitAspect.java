@@ -1,66 +1,125 @@
 package com.example.kuby.security.ratelimiter;
 
 import com.example.kuby.exceptions.BasicException;
+import com.example.kuby.redis.RedisCircuitBreaker;
+import com.example.kuby.redis.RedisFallback;
+import com.example.kuby.security.models.principal.UserPrincipal;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Before;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
 import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
 
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 @Aspect
 @Component
 @RequiredArgsConstructor
 public class RateLimitAspect {
     private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final LocalApproximateRateLimiter fallbackLimiter;
 
     @Value("${frontend.server.ip}")
     private String FRONTEND_SERVER_IP;
 
+    @Value("${ratelimit.endpoint.fallback:local}")
+    private RedisFallback FALLBACK;
+
     private static final String RATE_LIMIT_PREFIX = "ratelimit:";
+    private static final RedisScript<Long> FIXED_WINDOW_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/rate_limit_fixed_window.lua"), Long.class);
 
     @Before("@annotation(withRateLimitProtection)")
-    public void rateLimit(WithRateLimitProtection withRateLimitProtection) {
-        String ipAddress = getClientIpAddress();
-        if (ipAddress.equals(FRONTEND_SERVER_IP)) return;
+    public void rateLimit(JoinPoint joinPoint, WithRateLimitProtection withRateLimitProtection) {
+        HttpServletRequest request = getCurrentRequest();
 
-        String endpointIdentifier = getEndpointIdentifier();
-        String redisKey = RATE_LIMIT_PREFIX + endpointIdentifier + ":" + ipAddress;
+        String clientIdentifier = getClientIdentifier(request, withRateLimitProtection.scope());
+        if (clientIdentifier == null) return;
 
-        Long requestCount = redisTemplate.opsForValue().increment(redisKey);
+        String redisKey = RATE_LIMIT_PREFIX + getCounterIdentifier(request, joinPoint, withRateLimitProtection)
+                + ":" + clientIdentifier;
 
-        if (requestCount != null) {
-            if (requestCount == 1) {
-                redisTemplate.expire(redisKey, withRateLimitProtection.rateDuration(), TimeUnit.MILLISECONDS);
-            }
+        boolean allowed = circuitBreaker.execute("endpoint_rate_limit",
+                () -> {
+                    Long requestCount = redisTemplate.execute(FIXED_WINDOW_SCRIPT, List.of(redisKey),
+                            String.valueOf(withRateLimitProtection.weight()),
+                            String.valueOf(withRateLimitProtection.rateDuration()));
 
-            if (requestCount > withRateLimitProtection.rateLimit()) {
-                throw new BasicException(Map.of("request","Too many requests"), HttpStatus.TOO_MANY_REQUESTS);
-            }
-        } else {
-            throw new RuntimeException("Failed to increment request count in Redis");
-        }
+                    if (requestCount == null)
+                        throw new RuntimeException("Failed to increment request count in Redis");
+
+                    return requestCount <= withRateLimitProtection.rateLimit();
+                },
+                () -> fallbackDecision(redisKey, withRateLimitProtection));
+
+        if (!allowed)
+            throw new BasicException(Map.of("request", "Too many requests"), HttpStatus.TOO_MANY_REQUESTS);
     }
 
-    private String getEndpointIdentifier() {
-        ServletRequestAttributes requestAttributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-        if (requestAttributes != null) {
-            return requestAttributes.getRequest().getRequestURI();
-        }
-        throw new RuntimeException("Unable to get request attributes");
+    private boolean fallbackDecision(String redisKey, WithRateLimitProtection withRateLimitProtection) {
+        return switch (FALLBACK) {
+            case FAIL_OPEN -> true;
+            case FAIL_CLOSED -> false;
+            case LOCAL -> fallbackLimiter.tryAcquire(redisKey, System.currentTimeMillis(),
+                    withRateLimitProtection.rateDuration(),
+                    withRateLimitProtection.rateLimit(),
+                    withRateLimitProtection.weight()) == 0;
+        };
+    }
+
+    private String getCounterIdentifier(HttpServletRequest request, JoinPoint joinPoint,
+                                        WithRateLimitProtection withRateLimitProtection) {
+        String budget = withRateLimitProtection.budget();
+        return budget.isEmpty() ? getEndpointIdentifier(request, joinPoint) : "budget:" + budget;
+    }
+
+    // Keyed by the matched route template so path variables and query strings don't create new keys
+    private String getEndpointIdentifier(HttpServletRequest request, JoinPoint joinPoint) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern != null)
+            return request.getMethod() + " " + pattern;
+
+        return joinPoint.getSignature().toShortString();
+    }
+
+    private String getClientIdentifier(HttpServletRequest request, RateLimitScope scope) {
+        String ipAddress = request.getRemoteAddr();
+        UserPrincipal user = scope == RateLimitScope.IP ? null : getAuthenticatedUser();
+
+        // Anonymous callers of user scoped endpoints are limited by ip
+        if (user == null)
+            return ipAddress.equals(FRONTEND_SERVER_IP) ? null : "ip:" + ipAddress;
+
+        return scope == RateLimitScope.USER
+                ? "user:" + user.id()
+                : "ip:" + ipAddress + ":user:" + user.id();
+    }
+
+    private UserPrincipal getAuthenticatedUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal user)
+            return user;
+        return null;
     }
 
-    private String getClientIpAddress() {
+    private HttpServletRequest getCurrentRequest() {
         ServletRequestAttributes requestAttributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
         if (requestAttributes != null) {
-            return requestAttributes.getRequest().getRemoteAddr();
+            return requestAttributes.getRequest();
         }
         throw new RuntimeException("Unable to get request attributes");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package com.example.kuby.security.ratelimiter;
+
+public record RateLimitDecision(int granted, long remaining, long blockedUntil) {
+    private static final RateLimitDecision UNLIMITED = new RateLimitDecision(1, Long.MAX_VALUE, 0);
+    private static final RateLimitDecision ALLOWED_LOCALLY = new RateLimitDecision(1, -1, 0);
+
+    public static RateLimitDecision unlimited() {
+        return UNLIMITED;
+    }
+
+    // Served from a locally leased permit, so the remaining global quota is unknown
+    public static RateLimitDecision allowedLocally() {
+        return ALLOWED_LOCALLY;
+    }
+
+    public static RateLimitDecision blocked(long blockedUntil) {
+        return new RateLimitDecision(0, 0, blockedUntil);
+    }
+
+    public boolean allowed() {
+        return granted > 0;
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.kuby.security.ratelimiter;
+
+public record RateLimitPolicy(int limit, long window, long blockDuration) {
+}
@@ -0,0 +1,7 @@
+package com.example.kuby.security.ratelimiter;
+
+public enum RateLimitScope {
+    IP,
+    USER,
+    IP_AND_USER
+}
@@ -0,0 +1,105 @@
+package com.example.kuby.security.ratelimiter;
+
+import com.example.kuby.redis.RedisBatch;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public abstract class ScriptedRateLimitAlgorithm implements RateLimitAlgorithm {
+    private final StringRedisTemplate redisTemplate;
+    @SuppressWarnings("rawtypes")
+    private final RedisScript<List> acquireScript;
+    private final RedisScript<Long> releaseScript;
+    private final String stateKeyPrefix;
+    private final String blockedKeyPrefix;
+
+    protected ScriptedRateLimitAlgorithm(StringRedisTemplate redisTemplate, String scriptName,
+                                         String stateKeyPrefix, String blockedKeyPrefix) {
+        this.redisTemplate = redisTemplate;
+        this.acquireScript = RedisScript.of(new ClassPathResource("scripts/" + scriptName + ".lua"), List.class);
+        this.releaseScript = RedisScript.of(new ClassPathResource("scripts/" + scriptName + "_release.lua"), Long.class);
+        this.stateKeyPrefix = stateKeyPrefix;
+        this.blockedKeyPrefix = blockedKeyPrefix;
+    }
+
+    @Override
+    public RateLimitDecision acquire(String clientKey, long currentTime, RateLimitPolicy policy, int permits, String leaseId) {
+        return toDecision(redisTemplate.execute(acquireScript, acquireKeys(clientKey),
+                acquireArguments(currentTime, policy, permits, leaseId)));
+    }
+
+    @Override
+    public RedisBatch.Reply<RateLimitDecision> acquire(RedisBatch batch, String clientKey, long currentTime,
+                                                       RateLimitPolicy policy, int permits, String leaseId) {
+        List<String> arguments = new ArrayList<>();
+        for (Object argument : acquireArguments(currentTime, policy, permits, leaseId))
+            arguments.add(argument.toString());
+
+        return batch.evalSha(acquireScript, ReturnType.MULTI, acquireKeys(clientKey), arguments, this::toDecision);
+    }
+
+    @Override
+    public void release(String clientKey, long currentTime, RateLimitPolicy policy, int permits, String leaseId) {
+        if (permits <= 0)
+            return;
+
+        redisTemplate.execute(releaseScript,
+                List.of(stateKeyPrefix + "{" + clientKey + "}"),
+                releaseArguments(currentTime, policy, permits, leaseId).toArray());
+    }
+
+    @Override
+    public void release(RedisBatch batch, String clientKey, long currentTime, RateLimitPolicy policy,
+                        int permits, String leaseId) {
+        if (permits <= 0)
+            return;
+
+        batch.evalSha(releaseScript, ReturnType.INTEGER,
+                List.of(stateKeyPrefix + "{" + clientKey + "}"),
+                releaseArguments(currentTime, policy, permits, leaseId),
+                reply -> reply);
+    }
+
+    private List<String> acquireKeys(String clientKey) {
+        String hashTag = "{" + clientKey + "}";
+        return List.of(stateKeyPrefix + hashTag, blockedKeyPrefix + hashTag);
+    }
+
+    private static List<String> releaseArguments(long currentTime, RateLimitPolicy policy, int permits, String leaseId) {
+        return List.of(
+                String.valueOf(currentTime),
+                String.valueOf(policy.window()),
+                String.valueOf(policy.limit()),
+                String.valueOf(permits),
+                leaseId == null ? "" : leaseId);
+    }
+
+    private RateLimitDecision toDecision(Object reply) {
+        if (!(reply instanceof List<?> values) || values.size() != 3)
+            throw new IllegalStateException("Unexpected " + name() + " rate limit script reply: " + reply);
+
+        return new RateLimitDecision(
+                toNumber(values.get(0)).intValue(),
+                toNumber(values.get(1)).longValue(),
+                toNumber(values.get(2)).longValue());
+    }
+
+    // Pipelined replies go through the string serializer, script replies keep their numeric type
+    private static Number toNumber(Object value) {
+        return value instanceof Number number ? number : Long.valueOf(value.toString());
+    }
+
+    protected Object[] acquireArguments(long currentTime, RateLimitPolicy policy, int permits, String leaseId) {
+        return new Object[]{
+                String.valueOf(currentTime),
+                String.valueOf(policy.window()),
+                String.valueOf(policy.limit()),
+                String.valueOf(policy.blockDuration()),
+                String.valueOf(permits)
+        };
+    }
+}
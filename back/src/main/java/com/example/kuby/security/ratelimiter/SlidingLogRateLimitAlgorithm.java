@@ -0,0 +1,30 @@
+package com.example.kuby.security.ratelimiter;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+@Component
+public class SlidingLogRateLimitAlgorithm extends ScriptedRateLimitAlgorithm {
+    public SlidingLogRateLimitAlgorithm(StringRedisTemplate redisTemplate) {
+        super(redisTemplate, "rate_limit_sliding_log", "global_rate_limit:", "global_blocked:");
+    }
+
+    @Override
+    public String name() {
+        return "sliding-log";
+    }
+
+    @Override
+    protected Object[] acquireArguments(long currentTime, RateLimitPolicy policy, int permits, String leaseId) {
+        return new Object[]{
+                String.valueOf(currentTime),
+                String.valueOf(policy.window()),
+                String.valueOf(policy.limit()),
+                String.valueOf(policy.blockDuration()),
+                String.valueOf(permits),
+                leaseId != null ? leaseId : currentTime + "-" + Long.toHexString(ThreadLocalRandom.current().nextLong())
+        };
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.kuby.security.ratelimiter;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+public class SlidingWindowCounterRateLimitAlgorithm extends ScriptedRateLimitAlgorithm {
+    public SlidingWindowCounterRateLimitAlgorithm(StringRedisTemplate redisTemplate) {
+        super(redisTemplate, "rate_limit_sliding_window_counter", "global_rate_limit:swc:", "global_blocked:swc:");
+    }
+
+    @Override
+    public String name() {
+        return "sliding-window-counter";
+    }
+}
@@ -10,5 +10,10 @@
     public @interface WithRateLimitProtection {
         int rateLimit() default 5;
         long rateDuration() default 60000;
+        RateLimitScope scope() default RateLimitScope.IP;
+        // Units charged per call, so expensive endpoints use up the limit faster
+        int weight() default 1;
+        // Endpoints naming the same budget share one counter per client, charged by weight
+        String budget() default "";
 
-    }
\ No newline at end of file
+    }
@@ -1,6 +1,7 @@
 package com.example.kuby.security.service;
 
 import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.security.cache.UserPrincipalCache;
 import com.example.kuby.security.models.enums.Provider;
 import com.example.kuby.security.models.enums.UserRoles;
 import com.example.kuby.foruser.UserRepo;
@@ -19,6 +20,7 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class CustomOAuth2UserService extends DefaultOAuth2UserService {
     private final UserRepo usersRepo;
+    private final UserPrincipalCache userPrincipalCache;
 
     @Override
     public OAuth2User loadUser(OAuth2UserRequest userRequest) throws OAuth2AuthenticationException {
@@ -42,8 +44,11 @@ public class CustomOAuth2UserService extends DefaultOAuth2UserService {
         if (optionalUser.isPresent()) {
             UserEntity existingUser = optionalUser.get();
             if (!existingUser.getEmail().equals(Objects.requireNonNull(email))) {
+                String previousEmail = existingUser.getEmail();
                 existingUser.setEmail(email);
                 usersRepo.save(existingUser);
+                userPrincipalCache.invalidate(previousEmail, provider);
+                userPrincipalCache.invalidate(email, provider);
             }
             return new CustomOAuth2User(existingUser, oAuth2User.getAttributes());
         } else {
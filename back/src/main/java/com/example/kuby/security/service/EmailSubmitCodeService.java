@@ -1,6 +1,7 @@
 package com.example.kuby.security.service;
 
 import com.example.kuby.exceptions.BasicException;
+import com.example.kuby.security.cache.UserPrincipalCache;
 import com.example.kuby.security.models.enums.EmailCodeType;
 import com.example.kuby.security.models.enums.Provider;
 import com.example.kuby.foruser.UserRepo;
@@ -26,6 +27,7 @@ public class EmailSubmitCodeService {
     @Value("${frontend.url}")
     private String frontEndUrl;
     private final SubmissionCodeService submissionCodeService;
+    private final UserPrincipalCache userPrincipalCache;
     @Value("${server.base-url}")
     private String backendUrl;
 
@@ -69,6 +71,8 @@ public class EmailSubmitCodeService {
 
         if (userRepo.updateIsEmailSubmittedByEmailAndProvider(email, Provider.LOCAL) != 1)
             throw new BasicException(Map.of("email", "User with such email not found"), HttpStatus.NOT_FOUND);
+
+        userPrincipalCache.invalidate(email, Provider.LOCAL);
     }
 
     @Transactional
@@ -81,6 +85,8 @@ public class EmailSubmitCodeService {
 
         if (userRepo.updateLoginAndSetEmailSubmittedByEmailAndProvider(login, email,provider) != 1)
             throw new BasicException(Map.of("email", "User with such email not found"), HttpStatus.NOT_FOUND);
+
+        userPrincipalCache.invalidate(email, provider);
     }
 
     public String verifyChangePasswordSubmissionEmailCode(String code, String email) {
@@ -1,102 +1,145 @@
 package com.example.kuby.security.service;
 
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTCreator;
-import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.example.kuby.security.blacklist.BlacklistEntry;
 import com.example.kuby.security.blacklist.BlacklistService;
+import com.example.kuby.security.blacklist.RevocationWatermarks;
+import com.example.kuby.security.context.TokenClaims;
+import com.example.kuby.security.keys.JwtKeyRegistry;
 import com.example.kuby.exceptions.BasicException;
 import com.example.kuby.foruser.UserEntity;
-import com.example.kuby.security.models.entity.tokens.AccessToken;
-import com.example.kuby.security.models.entity.tokens.RefreshToken;
-import com.example.kuby.security.models.entity.tokens.Tokens;
+import com.example.kuby.redis.RedisBatch;
 import com.example.kuby.security.models.enums.TokenActionType;
-import com.example.kuby.security.repos.token.TokensRepo;
+import com.example.kuby.security.session.Rotation;
+import com.example.kuby.security.session.RotationResult;
+import com.example.kuby.security.session.TokenFamily;
+import com.example.kuby.security.session.TokenFamilyStore;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 @Service
 @RequiredArgsConstructor
 public class JwtService {
-    private final TokensRepo tokensRepo;
+    public static final String CLAIMS_REVISION = "claimsRevision";
+    private static final Set<String> REGISTERED_CLAIMS = Set.of("sub", "iat", "exp");
+    private static final int MAX_DEVICE_LENGTH = 256;
+    // Claims the server relies on to identify the token, actions on them are ignored
+    private static final Set<String> PROTECTED_CLAIMS = Set.of("sub", "iat", "exp", "jwtId", "userId", "familyId", "tokenType");
+
+    private final TokenFamilyStore tokenFamilyStore;
     private final BlacklistService blacklistService;
-    @Value("${security.jwt.token.secret-key:secret-key}")
-    private String JWT_SECRET;
-
-    @Transactional
-    public Tokens refreshTokenPair(Instant expiresAt,
-                                   Instant updatedAt,
-                                   Instant access_expiration,
-                                   Instant refresh_expiration,
-                                   UserEntity users) {
-        Tokens tokens = tokensRepo.findByUsers(users).orElseThrow(() ->
-                new BasicException(Map.of("user", "There are no linked tokens to you"), HttpStatus.NOT_FOUND));
-
-        if (tokens.getUpdatedAt().plusSeconds(5).toEpochMilli() > updatedAt.toEpochMilli())
-            throw new BasicException(Map.of("request","too many refresh requests"),HttpStatus.TOO_MANY_REQUESTS);
-
-        if (!tokens.getRefreshToken().getExpiresAt().truncatedTo(ChronoUnit.SECONDS).equals(expiresAt)) {
-            throw new BasicException(Map.of("refresh_token", "Refresh Token was used! You can use refresh token only once."), HttpStatus.BAD_REQUEST);
-        }
-        tokens.getAccessToken().setExpiresAt(access_expiration);
-        tokens.getRefreshToken().setExpiresAt(refresh_expiration);
-        tokens.setUpdatedAt(updatedAt);
-
-        return tokensRepo.save(tokens);
+    private final RevocationWatermarks revocationWatermarks;
+    private final JwtKeyRegistry keyRegistry;
+
+    public TokenFamily createTokenFamily(UserEntity users,
+                                         String device,
+                                         Instant createdAt,
+                                         Instant access_expiration,
+                                         Instant refresh_expiration) {
+        String deviceLabel = device == null ? "" : device.substring(0, Math.min(device.length(), MAX_DEVICE_LENGTH));
+        TokenFamily family = new TokenFamily(UUID.randomUUID(), users.getId(), UUID.randomUUID(), UUID.randomUUID(),
+                deviceLabel, createdAt, createdAt, access_expiration, refresh_expiration);
+        tokenFamilyStore.create(family);
+        return family;
     }
 
-    @Transactional
-    public Tokens updateTokenPair(Instant updatedAt,
-                                  Instant access_expiration,
-                                  Instant refresh_expiration,
-                                  UserEntity users) {
-        Optional<Tokens> optionalTokens = tokensRepo.findByUsers(users);
-        if (optionalTokens.isEmpty())
-            return tokensRepo.save(Tokens.builder()
-                    .accessToken(AccessToken.builder().expiresAt(access_expiration).build())
-                    .refreshToken(RefreshToken.builder().expiresAt(refresh_expiration).build())
-                    .updatedAt(updatedAt)
-                    .users(users)
-                    .build());
-        else {
-            Tokens tokens = optionalTokens.get();
-            tokens.getAccessToken().setExpiresAt(access_expiration);
-            tokens.getRefreshToken().setExpiresAt(refresh_expiration);
-            tokens.setUpdatedAt(updatedAt);
-
-            return tokensRepo.save(tokens);
-        }
+    public TokenFamily rotateTokenFamily(TokenClaims refreshTokenClaims,
+                                         Instant updatedAt,
+                                         Instant access_expiration,
+                                         Instant refresh_expiration) {
+        if (refreshTokenClaims.familyId() == null)
+            throw new BasicException(Map.of("user", "There are no linked tokens to you"), HttpStatus.NOT_FOUND);
+
+        RotationResult result = tokenFamilyStore.rotate(new Rotation(refreshTokenClaims.familyId(), refreshTokenClaims.userId(),
+                refreshTokenClaims.jwtId(), UUID.randomUUID(), UUID.randomUUID(), updatedAt, access_expiration, refresh_expiration));
+
+        return switch (result.outcome()) {
+            case ROTATED -> result.family();
+            case THROTTLED -> throw new BasicException(Map.of("request","too many refresh requests"),HttpStatus.TOO_MANY_REQUESTS);
+            case REUSED -> {
+                revokeAccessToken(result.family());
+                throw new BasicException(Map.of("refresh_token", "Refresh Token was used! You can use refresh token only once."), HttpStatus.BAD_REQUEST);
+            }
+            case MISSING -> throw new BasicException(Map.of("user", "There are no linked tokens to you"), HttpStatus.NOT_FOUND);
+        };
     }
 
-    public boolean isTokenClaimValid(String jwtId, DecodedJWT decodedAccessToken, HttpServletResponse response) {
-        if (blacklistService.isBlacklisted(jwtId)) {
-            Map<String, TokenActionType> actions = blacklistService.getBlacklistActions(jwtId);
-            for (Map.Entry<String, TokenActionType> entry : actions.entrySet()) {
-                String key = entry.getKey();
-                TokenActionType action = entry.getValue();
-                //TODO
-                //???????????????????????????????????????
-                //???????????????????????????????????????
-                //???????????????????????????????????????
-                //???????????????????????????????????????
-                //???????????????????????????????????????
-                //???????????????????????????????????????
-            }
-            blacklistService.removeFromBlacklist(jwtId);
-            return false;
-        } else {
-            return true;
-        }
+    public List<TokenFamily> getTokenFamilies(UUID userId) {
+        return tokenFamilyStore.findByUserId(userId);
+    }
+
+    public void revokeTokenFamily(UUID userId, UUID familyId) {
+        TokenFamily family = tokenFamilyStore.revoke(userId, familyId).orElseThrow(() ->
+                new BasicException(Map.of("session", "Session not found"), HttpStatus.NOT_FOUND));
+        revokeAccessToken(family);
+    }
+
+    public void logout(UUID userId, TokenClaims accessTokenClaims) {
+        blacklistAccessToken(accessTokenClaims.jwtId(), accessTokenClaims.expiresAt());
+        if (accessTokenClaims.familyId() != null)
+            tokenFamilyStore.revoke(userId, accessTokenClaims.familyId());
+    }
+
+    public void logoutAll(UUID userId) {
+        revocationWatermarks.revokeAllIssuedBefore(userId, Instant.now());
+        tokenFamilyStore.revokeAll(userId);
+    }
+
+    private void revokeAccessToken(TokenFamily family) {
+        blacklistAccessToken(family.accessJwtId(), family.accessExpiresAt());
+    }
+
+    private void blacklistAccessToken(UUID jwtId, Instant expiresAt) {
+        long remainingLifetime = expiresAt.toEpochMilli() - System.currentTimeMillis();
+        if (remainingLifetime > 0)
+            blacklistService.addToBlacklist(jwtId.toString(), Map.of("jwtId", TokenActionType.DELETE), remainingLifetime);
+    }
+
+    // Resolves the token the request goes on with: the same one, one reissued with the pending claim
+    // updates and returned in the Authorization header, or null when the token was revoked
+    public RedisBatch.Reply<DecodedJWT> applyTokenClaimActions(RedisBatch batch, String jwtId, DecodedJWT decodedAccessToken, HttpServletResponse response) {
+        RedisBatch.Reply<BlacklistEntry> blacklistEntry = blacklistService.getBlacklistEntry(batch, jwtId);
+        return () -> {
+            BlacklistEntry entry = blacklistEntry.get();
+            if (entry.isEmpty())
+                return decodedAccessToken;
+            if (entry.isRevoked())
+                return null;
+
+            String appliedRevision = decodedAccessToken.getClaim(CLAIMS_REVISION).asString();
+            if (appliedRevision != null && Long.parseLong(appliedRevision) >= entry.revision())
+                return decodedAccessToken;
+
+            Map<String, Object> updatedClaims = new HashMap<>();
+            List<String> deletedClaims = new ArrayList<>();
+            entry.actions().keySet().stream()
+                    .filter(claim -> !PROTECTED_CLAIMS.contains(claim))
+                    .forEach(claim -> {
+                        String newValue = entry.values().get(claim);
+                        if (newValue == null)
+                            deletedClaims.add(claim);
+                        else
+                            updatedClaims.put(claim, newValue);
+                    });
+            updatedClaims.put(CLAIMS_REVISION, Long.toString(entry.revision()));
+
+            String token = updateClaimsOfDecodedJwtToken(updatedClaims, decodedAccessToken);
+            if (!deletedClaims.isEmpty())
+                token = deleteClaimsFromDecodedJwtToken(deletedClaims, JWT.decode(token));
+
+            response.setHeader("Authorization", "Bearer " + token);
+            return JWT.decode(token);
+        };
     }
 
     public  String updateClaimsOfDecodedJwtToken(Map<String, Object> newClaims, DecodedJWT decodedJWT) {
@@ -108,14 +151,13 @@ public class JwtService {
         return generateTokenWithNewClaims(claims,decodedJWT);
     }
     public  String generateTokenWithNewClaims(Map<String,Object> newClaims,DecodedJWT decodedJWT){
-        Algorithm algorithm = Algorithm.HMAC256(JWT_SECRET);
-        JWTCreator.Builder jwtBuilder = JWT.create();
-
-        jwtBuilder.withSubject(decodedJWT.getSubject());
-        newClaims.forEach((key,value) -> jwtBuilder.withClaim(key,value.toString()));
-        jwtBuilder.withExpiresAt(decodedJWT.getExpiresAtAsInstant());
+        Map<String, String> claims = new HashMap<>(newClaims.size());
+        newClaims.forEach((key,value) -> {
+            if (!REGISTERED_CLAIMS.contains(key))
+                claims.put(key,value.toString());
+        });
 
-        return jwtBuilder.sign(algorithm);
+        return keyRegistry.sign(decodedJWT.getSubject(), claims, decodedJWT.getIssuedAtAsInstant(), decodedJWT.getExpiresAtAsInstant());
     }
 
     public  String deleteClaimsFromDecodedJwtToken(List<String> claimsToBeDeleted, DecodedJWT decodedJWT) {
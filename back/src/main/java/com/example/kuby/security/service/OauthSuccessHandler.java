@@ -26,7 +26,7 @@ public class OauthSuccessHandler implements AuthenticationSuccessHandler {
             response.sendRedirect(emailSubmissionUrl);
             return;
         }
-        String[] accessAndRefreshToken = userAuthenticationProvider.generateTokens(oauthUser.getUser());
+        String[] accessAndRefreshToken = userAuthenticationProvider.generateTokens(oauthUser.getUser(), request.getHeader("User-Agent"));
         response.addHeader("Authorization", "Bearer " + accessAndRefreshToken[0]);
         response.addHeader("X-Refresh-Token", accessAndRefreshToken[1]);
         response.setStatus(HttpStatus.OK.value());
@@ -1,13 +1,18 @@
 package com.example.kuby.security.service;
 
+import com.example.kuby.exceptions.BasicException;
+import com.example.kuby.redis.RedisCircuitBreaker;
 import com.example.kuby.security.models.enums.Provider;
 import com.example.kuby.security.util.generate.GenerateCode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.Map;
+import java.util.function.Supplier;
 
 @Service
 @Slf4j
@@ -15,6 +20,7 @@ import java.time.Duration;
 public class SubmissionCodeService {
     private final StringRedisTemplate redisTemplate;
     private final GenerateCode generateCode;
+    private final RedisCircuitBreaker circuitBreaker;
     private final String EMAIL_SUBMISSION_CODE_PREFIX = "submission_code:";
     private final String PASSWORD_CHANGE_SUBMISSION_CODE_PREFIX = "change_password_submission_code:";
     private final String NEW_PASSWORD = "new_password:";
@@ -23,38 +29,51 @@ public class SubmissionCodeService {
 
         String code = generateCode.generateCode();
 
-        redisTemplate.opsForValue().set(EMAIL_SUBMISSION_CODE_PREFIX + code + ":" + provider.toString().toUpperCase(), email);
-
-        redisTemplate.expire(EMAIL_SUBMISSION_CODE_PREFIX + code, Duration.ofMinutes(5));
+        withRedis(() -> {
+            redisTemplate.opsForValue().set(EMAIL_SUBMISSION_CODE_PREFIX + code + ":" + provider.toString().toUpperCase(), email, Duration.ofMinutes(5));
+            return null;
+        });
 
         return code;
     }
 
     public boolean isEmailSubmissionCodeExists(String code, String email, Provider provider) {
-        String value = redisTemplate.opsForValue().get(EMAIL_SUBMISSION_CODE_PREFIX + code + ":" + provider.toString().toUpperCase());
+        String value = withRedis(() -> redisTemplate.opsForValue().get(EMAIL_SUBMISSION_CODE_PREFIX + code + ":" + provider.toString().toUpperCase()));
         return value != null && value.equals(email);
     }
 
     public String createChangePasswordSubmissionCodeWithExpiration(String email) {
         String code = generateCode.generateCode();
 
-        redisTemplate.opsForValue().set(PASSWORD_CHANGE_SUBMISSION_CODE_PREFIX + code, email);
-        redisTemplate.expire(PASSWORD_CHANGE_SUBMISSION_CODE_PREFIX + code, Duration.ofMinutes(5));
+        withRedis(() -> {
+            redisTemplate.opsForValue().set(PASSWORD_CHANGE_SUBMISSION_CODE_PREFIX + code, email, Duration.ofMinutes(5));
+            return null;
+        });
 
         return code;
     }
 
     public void cacheEmailAndNewPasswordUntilSubmission(String email, String password) {
-        redisTemplate.opsForValue().set(NEW_PASSWORD + email, password);
-        redisTemplate.opsForValue().getAndExpire(NEW_PASSWORD + email, Duration.ofMinutes(5));
+        withRedis(() -> {
+            redisTemplate.opsForValue().set(NEW_PASSWORD + email, password, Duration.ofMinutes(5));
+            return null;
+        });
     }
 
     public Boolean isChangePasswordSubmissionCodeExists(String code, String email) {
-        String value = redisTemplate.opsForValue().getAndDelete(PASSWORD_CHANGE_SUBMISSION_CODE_PREFIX + code);
+        String value = withRedis(() -> redisTemplate.opsForValue().getAndDelete(PASSWORD_CHANGE_SUBMISSION_CODE_PREFIX + code));
         return value != null && value.equals(email);
     }
 
     public String popPasswordByEmail(String email) {
-        return redisTemplate.opsForValue().getAndDelete(NEW_PASSWORD + email);
+        return withRedis(() -> redisTemplate.opsForValue().getAndDelete(NEW_PASSWORD + email));
+    }
+
+    // Codes only live in Redis, so there is nothing to fall back to
+    private <T> T withRedis(Supplier<T> call) {
+        return circuitBreaker.execute("submission_code", call, () -> {
+            throw new BasicException(Map.of("code", "Verification codes are temporarily unavailable, try again later"),
+                    HttpStatus.SERVICE_UNAVAILABLE);
+        });
     }
-}
\ No newline at end of file
+}
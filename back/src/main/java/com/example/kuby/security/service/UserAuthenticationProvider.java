@@ -1,51 +1,56 @@
 package com.example.kuby.security.service;
 
-import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTCreator;
-import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.exceptions.JWTCreationException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
-import com.auth0.jwt.interfaces.Claim;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.example.kuby.exceptions.BasicException;
 import com.example.kuby.foruser.UserEntity;
-import com.example.kuby.security.models.entity.tokens.Tokens;
+import com.example.kuby.security.blacklist.RevocationWatermarks;
+import com.example.kuby.security.context.TokenClaims;
+import com.example.kuby.security.keys.JwtKeyRegistry;
 import com.example.kuby.security.models.enums.TokenType;
+import com.example.kuby.security.session.RefreshGraceCache;
+import com.example.kuby.security.session.TokenFamily;
 import com.example.kuby.foruser.UserRepo;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.Map;
-
-import static com.example.kuby.security.util.parsers.AuthHeaderParser.*;
+import java.util.Objects;
+import java.util.Set;
 
 
 @Service
 @RequiredArgsConstructor
 public class UserAuthenticationProvider {
+    private static final Set<String> REGISTERED_CLAIMS = Set.of("sub", "iat", "exp");
     private long accessTokenDurationInSeconds;
     private long refreshTokenDurationInSeconds;
     private final JwtService jwtService;
     private final UserRepo userRepo;
-    private final Algorithm algorithm;
+    private final JwtKeyRegistry keyRegistry;
+    private final RevocationWatermarks revocationWatermarks;
+    private final RefreshGraceCache refreshGraceCache;
 
     @Autowired
     public UserAuthenticationProvider(@Value("${security.jwt.access.token.duration.minutes:15}") long accessDuration,
-                                      @Value("${security.jwt.access.token.duration.days:7}") int refreshDuration, JwtService jwtService, UserRepo userRepo, Algorithm algorithm) {
+                                      @Value("${security.jwt.access.token.duration.days:7}") int refreshDuration, JwtService jwtService, UserRepo userRepo, JwtKeyRegistry keyRegistry,
+                                      RevocationWatermarks revocationWatermarks, RefreshGraceCache refreshGraceCache) {
         this.accessTokenDurationInSeconds = Duration.ofMinutes(accessDuration).toSeconds();
         this.refreshTokenDurationInSeconds = Duration.ofDays(refreshDuration).toSeconds();
         this.jwtService = jwtService;
         this.userRepo = userRepo;
-        this.algorithm = algorithm;
+        this.keyRegistry = keyRegistry;
+        this.revocationWatermarks = revocationWatermarks;
+        this.refreshGraceCache = refreshGraceCache;
     }
 
-    @Transactional
     public String[] refreshTokens(String access_token, String refresh_token) {
         DecodedJWT decodedRefreshToken = validateToken(refresh_token, TokenType.REFRESH);
 
@@ -57,10 +62,16 @@ public class UserAuthenticationProvider {
         if (!isTokensLinked(decodedAccessToken, decodedRefreshToken))
             throw new BasicException(Map.of("tokens", "Tokens are not linked too each other"), HttpStatus.BAD_REQUEST);
 
-        Map<String, Claim> claims = parsePayloadFromJwt(refresh_token);
-        Instant expiresAt = getExpiresAt(claims);
+        TokenClaims claims = TokenClaims.from(decodedRefreshToken);
+
+        if (revocationWatermarks.isRevoked(claims.userId(), claims.issuedAt()))
+            throw new BasicException(Map.of("refresh_token", "Refresh token was revoked"), HttpStatus.UNAUTHORIZED);
 
-        UserEntity users = userRepo.findByEmailAndProvider(decodedRefreshToken.getSubject(), getProviderFromClaims(claims)).orElseThrow(() ->
+        String[] graced = refreshGraceCache.get(claims.jwtId());
+        if (graced != null)
+            return graced;
+
+        UserEntity users = userRepo.findByEmailAndProvider(claims.email(), claims.provider()).orElseThrow(() ->
                 new BasicException(Map.of("refresh_token", "Email from token's subject not found"), HttpStatus.NOT_FOUND));
 
         String[] accessAndRefreshToken = new String[2];
@@ -69,29 +80,29 @@ public class UserAuthenticationProvider {
             Instant refreshTokenExpiration = calculateExpirationInstantWithMicros(refreshTokenDurationInSeconds);
             Instant updatedAt = Instant.now();
 
-            Tokens tokens = jwtService.refreshTokenPair(expiresAt,
-                    updatedAt, accessTokenExpiration,
-                    refreshTokenExpiration, users);
-
-            JWTCreator.Builder jwtBuilder = JWT.create();
-
-            Map<String, Claim> accessTokenPayload = decodedAccessToken.getClaims();
-
-            jwtBuilder.withSubject(decodedAccessToken.getSubject());
-            accessTokenPayload.forEach((key, value) -> jwtBuilder.withClaim(key, value.asString()));
-            jwtBuilder.withExpiresAt(accessTokenExpiration);
-
-            accessAndRefreshToken[0] = jwtBuilder.sign(algorithm);
-
-            accessAndRefreshToken[1] = JWT.create()
-                    .withSubject(users.getUsername())
-                    .withClaim("userId", users.getId().toString())
-                    .withClaim("jwtId", tokens.getRefreshToken().getId().toString())
-                    .withClaim("familyId", tokens.getId().toString())
-                    .withClaim("tokenType", TokenType.REFRESH.toString())
-                    .withClaim("provider", users.getProvider().toString().toLowerCase())
-                    .withExpiresAt(refreshTokenExpiration)
-                    .sign(algorithm);
+            TokenFamily family;
+            try {
+                family = jwtService.rotateTokenFamily(claims, updatedAt, accessTokenExpiration, refreshTokenExpiration);
+            } catch (BasicException ex) {
+                // Throttled because another tab rotated the same token a moment ago, its pair may be ready by now
+                graced = ex.getHttpStatus() == HttpStatus.TOO_MANY_REQUESTS ? refreshGraceCache.get(claims.jwtId()) : null;
+                if (graced == null)
+                    throw ex;
+                return graced;
+            }
+
+            // Identity and roles come from the user row, only extras such as claimsRevision carry over
+            Map<String, String> accessTokenClaims = accessTokenClaims(users, family);
+            decodedAccessToken.getClaims().forEach((key, value) -> {
+                if (!REGISTERED_CLAIMS.contains(key) && !accessTokenClaims.containsKey(key))
+                    accessTokenClaims.put(key, value.asString());
+            });
+            accessAndRefreshToken[0] = keyRegistry.sign(users.getUsername(), accessTokenClaims,
+                    updatedAt, accessTokenExpiration);
+
+            accessAndRefreshToken[1] = keyRegistry.sign(users.getUsername(), refreshTokenClaims(users, family,
+                    users.getProvider().toString().toLowerCase()), updatedAt, refreshTokenExpiration);
+            refreshGraceCache.put(claims.jwtId(), accessAndRefreshToken.clone());
 
         } catch (JWTCreationException exception) {
             throw new JWTCreationException("Error while generating token", exception);
@@ -99,35 +110,20 @@ public class UserAuthenticationProvider {
         return accessAndRefreshToken;
     }
 
-    @Transactional
-    public String[] generateTokens(UserEntity users) {
+    public String[] generateTokens(UserEntity users, String device) {
         String[] accessAndRefreshToken = new String[2];
         try {
             Instant accessTokenExpiration = calculateExpirationInstantWithMicros(accessTokenDurationInSeconds);
             Instant refreshTokenExpiration = calculateExpirationInstantWithMicros(refreshTokenDurationInSeconds);
             Instant updatedAt = Instant.now();
 
-            Tokens tokens = jwtService.updateTokenPair(updatedAt, accessTokenExpiration, refreshTokenExpiration, users);
-
-            accessAndRefreshToken[0] = JWT.create()
-                    .withSubject(users.getUsername())
-                    .withClaim("userId", users.getId().toString())
-                    .withClaim("jwtId", tokens.getAccessToken().getId().toString())
-                    .withClaim("familyId", tokens.getId().toString())
-                    .withClaim("tokenType", TokenType.ACCESS.toString())
-                    .withClaim("provider", users.getProvider().toString().toUpperCase())
-                    .withExpiresAt(accessTokenExpiration)
-                    .sign(algorithm);
-
-            accessAndRefreshToken[1] = JWT.create()
-                    .withSubject(users.getUsername())
-                    .withClaim("userId", users.getId().toString())
-                    .withClaim("jwtId", tokens.getRefreshToken().getId().toString())
-                    .withClaim("familyId", tokens.getId().toString())
-                    .withClaim("tokenType", TokenType.REFRESH.toString())
-                    .withClaim("provider", users.getProvider().toString().toUpperCase())
-                    .withExpiresAt(refreshTokenExpiration)
-                    .sign(algorithm);
+            TokenFamily family = jwtService.createTokenFamily(users, device, updatedAt, accessTokenExpiration, refreshTokenExpiration);
+
+            accessAndRefreshToken[0] = keyRegistry.sign(users.getUsername(), accessTokenClaims(users, family),
+                    updatedAt, accessTokenExpiration);
+
+            accessAndRefreshToken[1] = keyRegistry.sign(users.getUsername(), refreshTokenClaims(users, family,
+                    users.getProvider().toString().toUpperCase()), updatedAt, refreshTokenExpiration);
 
         } catch (JWTCreationException exception) {
             throw new JWTCreationException("Error while generating token", exception);
@@ -135,6 +131,27 @@ public class UserAuthenticationProvider {
         return accessAndRefreshToken;
     }
 
+    private static Map<String, String> accessTokenClaims(UserEntity users, TokenFamily family) {
+        Map<String, String> claims = new LinkedHashMap<>();
+        claims.put("userId", users.getId().toString());
+        claims.put("jwtId", family.accessJwtId().toString());
+        claims.put("familyId", family.id().toString());
+        claims.put("tokenType", TokenType.ACCESS.toString());
+        claims.put("provider", users.getProvider().toString().toUpperCase());
+        claims.put("roles", users.getRoles().name());
+        return claims;
+    }
+
+    private static Map<String, String> refreshTokenClaims(UserEntity users, TokenFamily family, String provider) {
+        Map<String, String> claims = new LinkedHashMap<>();
+        claims.put("userId", users.getId().toString());
+        claims.put("jwtId", family.refreshJwtId().toString());
+        claims.put("familyId", family.id().toString());
+        claims.put("tokenType", TokenType.REFRESH.toString());
+        claims.put("provider", provider);
+        return claims;
+    }
+
     public DecodedJWT validateToken(String token, TokenType expectedTokenType) {
         DecodedJWT decodedJWT = decodeJwt(token);
 
@@ -191,7 +208,7 @@ public class UserAuthenticationProvider {
 //
     public DecodedJWT decodeJwt(String jwt) {
         try {
-            return JWT.require(algorithm).build().verify(jwt);
+            return keyRegistry.verify(jwt);
         } catch (JWTVerificationException ex) {
             return null;
         }
@@ -199,13 +216,14 @@ public class UserAuthenticationProvider {
 
     public DecodedJWT decodeJwtWithoutExp(String jwt) {
         try {
-            return JWT.require(algorithm).acceptExpiresAt(Instant.now().plusMillis(1000000).getEpochSecond()).build().verify(jwt);
+            return keyRegistry.verifyIgnoringExpiry(jwt);
         } catch (JWTVerificationException ex) {
             throw new RuntimeException("Error while decoding token", ex);
         }
     }
 
     public boolean isTokensLinked(DecodedJWT decodedAccessToken, DecodedJWT decodedRefreshToken) {
-        return decodedAccessToken.getSubject().equals(decodedRefreshToken.getSubject());
+        return decodedAccessToken.getSubject().equals(decodedRefreshToken.getSubject())
+                && Objects.equals(decodedAccessToken.getClaim("familyId").asString(), decodedRefreshToken.getClaim("familyId").asString());
     }
 }
@@ -2,10 +2,10 @@ package com.example.kuby.security.service;
 
 import com.example.kuby.exceptions.BasicException;
 import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.security.cache.UserPrincipalCache;
 import com.example.kuby.security.models.enums.Provider;
 import com.example.kuby.security.models.enums.UserRoles;
 import com.example.kuby.foruser.UserRepo;
-import com.example.kuby.security.repos.token.TokensRepo;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
@@ -25,8 +25,9 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class UserService implements UserDetailsService {
     private final UserRepo userRepo;
-    private final TokensRepo tokensRepo;
+    private final JwtService jwtService;
     private final PasswordEncoder encoder;
+    private final UserPrincipalCache userPrincipalCache;
 
     @Value("${spring.mail.username}")
     private String emailAdmin;
@@ -60,8 +61,9 @@ public class UserService implements UserDetailsService {
     public void deleteUserById(UUID userId) {
         UserEntity users = userRepo.findById(userId).orElseThrow(() ->
                 new BasicException(Map.of("userId", "User with such id not found"), HttpStatus.NOT_FOUND));
-        tokensRepo.deleteByUsers(users);
+        jwtService.logoutAll(users.getId());
         userRepo.delete(users);
+        userPrincipalCache.invalidate(users.getEmail(), users.getProvider());
     }
 
     @Transactional
@@ -74,5 +76,6 @@ public class UserService implements UserDetailsService {
         user.setPassword(encoder.encode(password));
 
         userRepo.save(user);
+        userPrincipalCache.invalidate(email, Provider.LOCAL);
     }
 }
\ No newline at end of file
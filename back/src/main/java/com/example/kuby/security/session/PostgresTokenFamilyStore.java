@@ -0,0 +1,78 @@
+package com.example.kuby.security.session;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Token families kept in the flattened {@code token_family} table. A rotation is one conditional statement,
+ * so concurrent refreshes of the same family serialize on its row lock instead of racing between a read and a
+ * write; the outcome is read off the row the statement returns.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "security.session.store", havingValue = "postgres")
+public class PostgresTokenFamilyStore implements TokenFamilyStore {
+    private final TokenFamilyRepo tokenFamilyRepo;
+    private final long throttleMillis;
+
+    public PostgresTokenFamilyStore(TokenFamilyRepo tokenFamilyRepo,
+                                    @Value("${security.session.refresh.throttle.ms:5000}") long throttleMillis) {
+        this.tokenFamilyRepo = tokenFamilyRepo;
+        this.throttleMillis = throttleMillis;
+    }
+
+    @Override
+    public void create(TokenFamily family) {
+        tokenFamilyRepo.save(TokenFamilyEntity.from(family));
+    }
+
+    @Override
+    public RotationResult rotate(Rotation rotation) {
+        Instant throttledBefore = rotation.rotatedAt().minusMillis(throttleMillis);
+        Optional<TokenFamilyEntity> row = tokenFamilyRepo.rotate(rotation.familyId(), rotation.userId(),
+                rotation.presentedRefreshJwtId(), rotation.accessJwtId(), rotation.refreshJwtId(),
+                rotation.rotatedAt(), throttledBefore, rotation.accessExpiresAt(), rotation.refreshExpiresAt());
+        if (row.isEmpty())
+            return new RotationResult(RotationOutcome.MISSING, null);
+
+        TokenFamily family = row.get().toTokenFamily();
+        if (family.refreshJwtId().equals(rotation.refreshJwtId()))
+            return new RotationResult(RotationOutcome.ROTATED, family);
+        if (family.updatedAt().isAfter(throttledBefore))
+            return new RotationResult(RotationOutcome.THROTTLED, null);
+        return new RotationResult(RotationOutcome.REUSED, family);
+    }
+
+    @Override
+    public List<TokenFamily> findByUserId(UUID userId) {
+        return tokenFamilyRepo.findAllByUserIdAndRefreshExpiresAtAfter(userId, Instant.now()).stream()
+                .map(TokenFamilyEntity::toTokenFamily)
+                .toList();
+    }
+
+    @Override
+    public Optional<TokenFamily> revoke(UUID userId, UUID familyId) {
+        return tokenFamilyRepo.deleteByIdAndUserIdReturning(familyId, userId).map(TokenFamilyEntity::toTokenFamily);
+    }
+
+    @Override
+    public void revokeAll(UUID userId) {
+        tokenFamilyRepo.deleteAllByUserId(userId);
+    }
+
+    // Expired families are already ignored by every query, this only keeps the table small
+    @Scheduled(fixedDelayString = "${security.session.purge.interval.ms:3600000}")
+    public void purgeExpired() {
+        int purged = tokenFamilyRepo.deleteAllExpired(Instant.now());
+        if (purged > 0)
+            log.debug("Purged {} expired token families", purged);
+    }
+}
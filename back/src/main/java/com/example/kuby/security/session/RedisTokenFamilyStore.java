@@ -0,0 +1,193 @@
+package com.example.kuby.security.session;
+
+import com.example.kuby.exceptions.BasicException;
+import com.example.kuby.redis.RedisCircuitBreaker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Token families kept in Redis: a {@code session:{familyId}} hash that expires with its refresh token and a
+ * {@code user_sessions:{userId}} set indexing the families of a user. Creating, rotating and revoking are
+ * single scripts, so login and refresh never touch Postgres.
+ */
+@Component
+@ConditionalOnProperty(name = "security.session.store", havingValue = "redis", matchIfMissing = true)
+public class RedisTokenFamilyStore implements TokenFamilyStore {
+    private static final String CALLER = "session_store";
+    private static final String SESSION_PREFIX = "session:";
+    private static final String INDEX_PREFIX = "user_sessions:";
+    private static final RedisScript<Long> CREATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/session_create.lua"), Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> ROTATE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/session_rotate.lua"), List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> REVOKE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/session_revoke.lua"), List.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final long throttleMillis;
+
+    public RedisTokenFamilyStore(StringRedisTemplate redisTemplate,
+                                 RedisCircuitBreaker circuitBreaker,
+                                 @Value("${security.session.refresh.throttle.ms:5000}") long throttleMillis) {
+        this.redisTemplate = redisTemplate;
+        this.circuitBreaker = circuitBreaker;
+        this.throttleMillis = throttleMillis;
+    }
+
+    @Override
+    public void create(TokenFamily family) {
+        List<String> args = new ArrayList<>(List.of(
+                family.id().toString(),
+                String.valueOf(family.createdAt().toEpochMilli()),
+                String.valueOf(family.refreshExpiresAt().toEpochMilli())));
+        toHash(family).forEach((field, value) -> {
+            args.add(field);
+            args.add(value);
+        });
+
+        circuitBreaker.run(CALLER,
+                () -> redisTemplate.execute(CREATE_SCRIPT, keys(family.userId(), family.id()), args.toArray()),
+                () -> {
+                    throw unavailable();
+                });
+    }
+
+    @Override
+    public RotationResult rotate(Rotation rotation) {
+        List<?> reply = circuitBreaker.execute(CALLER, () -> redisTemplate.execute(ROTATE_SCRIPT,
+                keys(rotation.userId(), rotation.familyId()),
+                rotation.familyId().toString(),
+                rotation.userId().toString(),
+                rotation.presentedRefreshJwtId().toString(),
+                String.valueOf(rotation.rotatedAt().toEpochMilli()),
+                String.valueOf(throttleMillis),
+                rotation.accessJwtId().toString(),
+                rotation.refreshJwtId().toString(),
+                String.valueOf(rotation.accessExpiresAt().toEpochMilli()),
+                String.valueOf(rotation.refreshExpiresAt().toEpochMilli())), () -> {
+            throw unavailable();
+        });
+
+        RotationOutcome outcome = RotationOutcome.valueOf(reply.get(0).toString());
+        return new RotationResult(outcome, reply.size() > 1 ? fromHash(rotation.familyId(), reply.subList(1, reply.size())) : null);
+    }
+
+    @Override
+    public List<TokenFamily> findByUserId(UUID userId) {
+        return circuitBreaker.execute(CALLER, () -> {
+            Set<String> familyIds = redisTemplate.opsForSet().members(INDEX_PREFIX + userId);
+            if (familyIds == null || familyIds.isEmpty())
+                return List.of();
+
+            List<String> ids = List.copyOf(familyIds);
+            List<Object> hashes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection stringConnection = (StringRedisConnection) connection;
+                ids.forEach(id -> stringConnection.hGetAll(SESSION_PREFIX + id));
+                return null;
+            });
+
+            List<TokenFamily> families = new ArrayList<>(ids.size());
+            List<String> expired = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                Map<?, ?> hash = (Map<?, ?>) hashes.get(i);
+                if (hash == null || hash.isEmpty())
+                    expired.add(ids.get(i));
+                else
+                    families.add(fromHash(UUID.fromString(ids.get(i)), hash));
+            }
+            // Families expire on their own, their index entries are dropped lazily
+            if (!expired.isEmpty())
+                redisTemplate.opsForSet().remove(INDEX_PREFIX + userId, expired.toArray());
+            return families;
+        }, () -> {
+            throw unavailable();
+        });
+    }
+
+    @Override
+    public Optional<TokenFamily> revoke(UUID userId, UUID familyId) {
+        List<?> reply = circuitBreaker.execute(CALLER, () -> redisTemplate.execute(REVOKE_SCRIPT,
+                keys(userId, familyId), familyId.toString(), userId.toString()), () -> {
+            throw unavailable();
+        });
+        return reply.isEmpty() ? Optional.empty() : Optional.of(fromHash(familyId, reply));
+    }
+
+    @Override
+    public void revokeAll(UUID userId) {
+        circuitBreaker.run(CALLER, () -> {
+            Set<String> familyIds = redisTemplate.opsForSet().members(INDEX_PREFIX + userId);
+            List<String> keys = new ArrayList<>();
+            keys.add(INDEX_PREFIX + userId);
+            if (familyIds != null)
+                familyIds.forEach(id -> keys.add(SESSION_PREFIX + id));
+            redisTemplate.delete(keys);
+        }, () -> {
+            throw unavailable();
+        });
+    }
+
+    private static List<String> keys(UUID userId, UUID familyId) {
+        return List.of(SESSION_PREFIX + familyId, INDEX_PREFIX + userId);
+    }
+
+    private static Map<String, String> toHash(TokenFamily family) {
+        Map<String, String> hash = new HashMap<>();
+        hash.put("userId", family.userId().toString());
+        hash.put("accessJwtId", family.accessJwtId().toString());
+        hash.put("refreshJwtId", family.refreshJwtId().toString());
+        hash.put("device", family.device() == null ? "" : family.device());
+        hash.put("createdAt", String.valueOf(family.createdAt().toEpochMilli()));
+        hash.put("updatedAt", String.valueOf(family.updatedAt().toEpochMilli()));
+        hash.put("accessExpiresAt", String.valueOf(family.accessExpiresAt().toEpochMilli()));
+        hash.put("refreshExpiresAt", String.valueOf(family.refreshExpiresAt().toEpochMilli()));
+        return hash;
+    }
+
+    private static TokenFamily fromHash(UUID familyId, List<?> flatHash) {
+        Map<String, String> hash = new HashMap<>(flatHash.size() / 2);
+        for (int i = 0; i + 1 < flatHash.size(); i += 2)
+            hash.put(flatHash.get(i).toString(), flatHash.get(i + 1).toString());
+        return fromHash(familyId, hash);
+    }
+
+    private static TokenFamily fromHash(UUID familyId, Map<?, ?> hash) {
+        return new TokenFamily(
+                familyId,
+                UUID.fromString(hash.get("userId").toString()),
+                UUID.fromString(hash.get("accessJwtId").toString()),
+                UUID.fromString(hash.get("refreshJwtId").toString()),
+                hash.get("device").toString(),
+                instant(hash.get("createdAt")),
+                instant(hash.get("updatedAt")),
+                instant(hash.get("accessExpiresAt")),
+                instant(hash.get("refreshExpiresAt")));
+    }
+
+    private static Instant instant(Object epochMillis) {
+        return Instant.ofEpochMilli(Long.parseLong(epochMillis.toString()));
+    }
+
+    private static BasicException unavailable() {
+        return new BasicException(Map.of("session", "Session store is temporarily unavailable"), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.kuby.security.session;
+
+import com.example.kuby.redis.RedisCircuitBreaker;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Remembers the pair issued for a rotated refresh token for a short grace window, keyed by the jwtId of the
+ * token that was presented. Tabs refreshing with the same token at once get that pair back instead of a 429 or
+ * a reuse error. Entries are shared through Redis and kept locally as well, so a Redis outage only narrows the
+ * window to requests landing on the same node.
+ */
+@Component
+public class RefreshGraceCache {
+    private static final String CALLER = "refresh_grace";
+    private static final String KEY_PREFIX = "refresh_grace:";
+    private static final char SEPARATOR = ' ';
+
+    private final StringRedisTemplate redisTemplate;
+    private final RedisCircuitBreaker circuitBreaker;
+    private final Duration grace;
+    private final Cache<UUID, String[]> local;
+
+    public RefreshGraceCache(StringRedisTemplate redisTemplate,
+                             RedisCircuitBreaker circuitBreaker,
+                             @Value("${security.session.refresh.grace.ms:5000}") long graceMillis,
+                             @Value("${security.session.refresh.grace.local.max-size:10000}") long localMaxSize) {
+        this.redisTemplate = redisTemplate;
+        this.circuitBreaker = circuitBreaker;
+        this.grace = Duration.ofMillis(graceMillis);
+        this.local = Caffeine.newBuilder()
+                .maximumSize(localMaxSize)
+                .expireAfterWrite(grace)
+                .build();
+    }
+
+    public void put(UUID presentedRefreshJwtId, String[] accessAndRefreshToken) {
+        if (grace.isZero())
+            return;
+
+        local.put(presentedRefreshJwtId, accessAndRefreshToken);
+        circuitBreaker.run(CALLER, () -> redisTemplate.opsForValue().set(KEY_PREFIX + presentedRefreshJwtId,
+                accessAndRefreshToken[0] + SEPARATOR + accessAndRefreshToken[1], grace), () -> {
+        });
+    }
+
+    // Returns the pair issued for the presented refresh token or null when it wasn't rotated within the window
+    public String[] get(UUID presentedRefreshJwtId) {
+        if (grace.isZero())
+            return null;
+
+        String[] cached = local.getIfPresent(presentedRefreshJwtId);
+        if (cached != null)
+            return cached.clone();
+
+        String shared = circuitBreaker.execute(CALLER,
+                () -> redisTemplate.opsForValue().get(KEY_PREFIX + presentedRefreshJwtId), () -> null);
+        if (shared == null)
+            return null;
+
+        int separatorIndex = shared.indexOf(SEPARATOR);
+        return new String[]{shared.substring(0, separatorIndex), shared.substring(separatorIndex + 1)};
+    }
+}
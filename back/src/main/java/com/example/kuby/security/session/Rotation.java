@@ -0,0 +1,15 @@
+package com.example.kuby.security.session;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// Replaces the tokens of a family, applied only when presentedRefreshJwtId is the family's current refresh token
+public record Rotation(UUID familyId,
+                       UUID userId,
+                       UUID presentedRefreshJwtId,
+                       UUID accessJwtId,
+                       UUID refreshJwtId,
+                       Instant rotatedAt,
+                       Instant accessExpiresAt,
+                       Instant refreshExpiresAt) {
+}
@@ -0,0 +1,9 @@
+package com.example.kuby.security.session;
+
+public enum RotationOutcome {
+    ROTATED,
+    // The presented refresh token was already rotated away, the family is revoked since it may be stolen
+    REUSED,
+    THROTTLED,
+    MISSING
+}
@@ -0,0 +1,5 @@
+package com.example.kuby.security.session;
+
+// family is the rotated family when ROTATED, the revoked one when REUSED and null otherwise
+public record RotationResult(RotationOutcome outcome, TokenFamily family) {
+}
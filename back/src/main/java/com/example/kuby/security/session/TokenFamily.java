@@ -0,0 +1,16 @@
+package com.example.kuby.security.session;
+
+import java.time.Instant;
+import java.util.UUID;
+
+// One login session: the access and refresh token currently issued to a device, rotated together
+public record TokenFamily(UUID id,
+                          UUID userId,
+                          UUID accessJwtId,
+                          UUID refreshJwtId,
+                          String device,
+                          Instant createdAt,
+                          Instant updatedAt,
+                          Instant accessExpiresAt,
+                          Instant refreshExpiresAt) {
+}
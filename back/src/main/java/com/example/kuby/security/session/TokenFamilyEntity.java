@@ -0,0 +1,50 @@
+package com.example.kuby.security.session;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Entity
+@Data
+@Table(name = "token_family", indexes = @Index(name = "idx_token_family_user_id", columnList = "user_id"))
+public class TokenFamilyEntity {
+    @Id
+    private UUID id;
+    @Column(nullable = false)
+    private UUID userId;
+    @Column(nullable = false)
+    private UUID accessJwtId;
+    @Column(nullable = false)
+    private UUID refreshJwtId;
+    @Column(length = 256)
+    private String device;
+    @Column(nullable = false)
+    private Instant createdAt;
+    @Column(nullable = false)
+    private Instant updatedAt;
+    @Column(nullable = false)
+    private Instant accessExpiresAt;
+    @Column(nullable = false)
+    private Instant refreshExpiresAt;
+
+    static TokenFamilyEntity from(TokenFamily family) {
+        return new TokenFamilyEntity(family.id(), family.userId(), family.accessJwtId(), family.refreshJwtId(),
+                family.device(), family.createdAt(), family.updatedAt(), family.accessExpiresAt(), family.refreshExpiresAt());
+    }
+
+    TokenFamily toTokenFamily() {
+        return new TokenFamily(id, userId, accessJwtId, refreshJwtId, device, createdAt, updatedAt, accessExpiresAt, refreshExpiresAt);
+    }
+}
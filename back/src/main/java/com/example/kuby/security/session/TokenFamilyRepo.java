@@ -0,0 +1,67 @@
+package com.example.kuby.security.session;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface TokenFamilyRepo extends JpaRepository<TokenFamilyEntity, UUID> {
+    List<TokenFamilyEntity> findAllByUserIdAndRefreshExpiresAtAfter(UUID userId, Instant now);
+
+    // Locks the live family, then either rotates it (presented token is current) or deletes it (presented token
+    // was already rotated away), both only once the throttle passed. Returns the rotated row, the deleted row or
+    // the untouched locked row, nothing when the family is missing or expired.
+    @Transactional
+    @Query(value = "WITH current_family AS ( " +
+            "    SELECT * FROM token_family " +
+            "    WHERE id = :familyId AND user_id = :userId AND refresh_expires_at > :rotatedAt " +
+            "    FOR UPDATE " +
+            "), rotated AS ( " +
+            "    UPDATE token_family f " +
+            "    SET access_jwt_id = :accessJwtId, refresh_jwt_id = :refreshJwtId, updated_at = :rotatedAt, " +
+            "        access_expires_at = :accessExpiresAt, refresh_expires_at = :refreshExpiresAt " +
+            "    FROM current_family c " +
+            "    WHERE f.id = c.id AND f.refresh_jwt_id = :presentedRefreshJwtId AND f.updated_at <= :throttledBefore " +
+            "    RETURNING f.* " +
+            "), reused AS ( " +
+            "    DELETE FROM token_family f " +
+            "    USING current_family c " +
+            "    WHERE f.id = c.id AND f.refresh_jwt_id <> :presentedRefreshJwtId AND f.updated_at <= :throttledBefore " +
+            "    RETURNING f.* " +
+            ") " +
+            "SELECT * FROM rotated " +
+            "UNION ALL SELECT * FROM reused " +
+            "UNION ALL SELECT * FROM current_family " +
+            "WHERE NOT EXISTS (SELECT 1 FROM rotated) AND NOT EXISTS (SELECT 1 FROM reused)", nativeQuery = true)
+    Optional<TokenFamilyEntity> rotate(@Param("familyId") UUID familyId,
+                                       @Param("userId") UUID userId,
+                                       @Param("presentedRefreshJwtId") UUID presentedRefreshJwtId,
+                                       @Param("accessJwtId") UUID accessJwtId,
+                                       @Param("refreshJwtId") UUID refreshJwtId,
+                                       @Param("rotatedAt") Instant rotatedAt,
+                                       @Param("throttledBefore") Instant throttledBefore,
+                                       @Param("accessExpiresAt") Instant accessExpiresAt,
+                                       @Param("refreshExpiresAt") Instant refreshExpiresAt);
+
+    @Transactional
+    @Query(value = "DELETE FROM token_family WHERE id = :familyId AND user_id = :userId RETURNING *", nativeQuery = true)
+    Optional<TokenFamilyEntity> deleteByIdAndUserIdReturning(@Param("familyId") UUID familyId, @Param("userId") UUID userId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TokenFamilyEntity f WHERE f.userId = :userId")
+    int deleteAllByUserId(@Param("userId") UUID userId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM TokenFamilyEntity f WHERE f.refreshExpiresAt <= :now")
+    int deleteAllExpired(@Param("now") Instant now);
+}
@@ -0,0 +1,19 @@
+package com.example.kuby.security.session;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface TokenFamilyStore {
+    void create(TokenFamily family);
+
+    // Atomic compare-and-rotate, checks the throttle first and the presented refresh token second
+    RotationResult rotate(Rotation rotation);
+
+    List<TokenFamily> findByUserId(UUID userId);
+
+    // Returns the revoked family, empty when it doesn't exist or belongs to another user
+    Optional<TokenFamily> revoke(UUID userId, UUID familyId);
+
+    void revokeAll(UUID userId);
+}
@@ -2,14 +2,12 @@ package com.example.kuby.security.util.parsers;
 
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.interfaces.Claim;
-import com.auth0.jwt.interfaces.DecodedJWT;
 import com.example.kuby.exceptions.BasicException;
 import com.example.kuby.security.models.enums.Provider;
+import com.example.kuby.security.models.enums.UserRoles;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
 
-import java.time.Instant;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.function.Function;
@@ -51,31 +49,11 @@ public class AuthHeaderParser {
             }
         });
     }
-    public static Instant getExpiresAt(Map<String,Claim> claims){
-        return getPayloadValueByKey(claims, "expiresAt", claim -> {
-            try {
-                return claim.asInstant();
-            } catch (Exception ex) {
-                throw new BasicException(Map.of("expiresAt", "Not matches pattern"), HttpStatus.BAD_REQUEST);
-            }
-        });
-    }
     public static Provider getProviderFromClaims(Map<String,Claim> claims){
         return getPayloadValueByKey(claims,"provider",claim -> getProviderFromString(claim.asString()));
     }
-
-    public static Map<String, Claim> parsePayloadFromJwt(String jwt) {
-        DecodedJWT decodedJWT = JWT.decode(jwt);
-        Map<String, Claim> claims = new HashMap<>(decodedJWT.getClaims());
-        claims.put("expiresAt", new InstantClaim(decodedJWT.getExpiresAtAsInstant()));
-        claims.put("email", new StringClaim(decodedJWT.getSubject()));
-        return claims;
-    }
-    public static Map<String, Claim> parsePayloadFromDecodedJwt(DecodedJWT decodedJWT) {
-        Map<String, Claim> claims = new HashMap<>(decodedJWT.getClaims());
-        claims.put("expiresAt", new InstantClaim(decodedJWT.getExpiresAtAsInstant()));
-        claims.put("email", new StringClaim(decodedJWT.getSubject()));
-        return claims;
+    public static UserRoles getRolesFromClaims(Map<String,Claim> claims){
+        return getPayloadValueByKey(claims,"roles",claim -> UserRoles.valueOf(claim.asString()));
     }
 
     public static String recoverToken(HttpServletRequest request) {
@@ -16,6 +16,10 @@ import java.util.UUID;
 @Entity
 @Data
 @org.springframework.data.relational.core.mapping.Table(name = "task")
+@Table(name = "task", indexes = {
+        @Index(name = "idx_task_creator_id_dead_line_id", columnList = "creator_id, dead_line, id"),
+        @Index(name = "idx_task_creator_id_is_finished_dead_line_id", columnList = "creator_id, is_finished, dead_line, id")
+})
 public class Task {
     @Id
     @GeneratedValue(strategy = GenerationType.UUID)
@@ -31,6 +35,9 @@ public class Task {
     private Boolean isFinished;
     @Column(nullable = false)
     private Boolean isExpired;
+    @Version
+    @Column(columnDefinition = "BIGINT DEFAULT 0", nullable = false)
+    private Long version;
 
     @PrePersist
     @PreUpdate
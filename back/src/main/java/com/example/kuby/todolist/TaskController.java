@@ -1,6 +1,7 @@
 package com.example.kuby.todolist;
 
-import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.exceptions.BasicException;
+import com.example.kuby.security.models.principal.UserPrincipal;
 import com.example.kuby.utils.LocalDateTimeParser;
 import io.swagger.v3.oas.annotations.Parameter;
 import jakarta.validation.Valid;
@@ -11,7 +12,8 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.UUID;
 
 @RestController
@@ -22,40 +24,83 @@ public class TaskController {
 
     @PostMapping
     public ResponseEntity<TaskDTO> create(@RequestBody @Valid CreateTaskRequest request,
-                                          @Parameter(hidden = true) @AuthenticationPrincipal UserEntity user) {
-        return ResponseEntity.status(HttpStatus.CREATED).body(taskService.create(
+                                          @Parameter(hidden = true) @AuthenticationPrincipal UserPrincipal user) {
+        TaskDTO task = taskService.create(
                 request.getName(),
-                user.getId(),
+                user.id(),
                 LocalDateTimeParser.parse(request.getDeadLine()),
                 request.isFinished()
-        ));
+        );
+        return ResponseEntity.status(HttpStatus.CREATED).eTag(String.valueOf(task.getVersion())).body(task);
     }
 
     @GetMapping
-    public ResponseEntity<List<TaskDTO>> getAll(@Parameter(hidden = true) @AuthenticationPrincipal UserEntity user) {
-        return ResponseEntity.ok(taskService.getAll(user.getId()));
+    public ResponseEntity<TaskPage> getPage(@RequestParam(required = false) String status,
+                                            @RequestParam(required = false) String from,
+                                            @RequestParam(required = false) String to,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "50") int limit,
+                                            @Parameter(hidden = true) @AuthenticationPrincipal UserPrincipal user) {
+        return ResponseEntity.ok(taskService.getPage(
+                user.id(),
+                parseStatus(status),
+                from == null ? null : LocalDateTimeParser.parse(from),
+                to == null ? null : LocalDateTimeParser.parse(to),
+                cursor,
+                limit
+        ));
     }
 
     @PutMapping("/{id}")
     public ResponseEntity<TaskDTO> update(@PathVariable UUID id,
                                           @RequestParam(required = false) String name,
                                           @RequestParam(required = false) String deadLine,
-                                          @Parameter(hidden = true) @AuthenticationPrincipal UserEntity user) {
+                                          @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                          @Parameter(hidden = true) @AuthenticationPrincipal UserPrincipal user) {
         LocalDateTime formattedDeadline = null;
         if (deadLine != null)
             formattedDeadline = LocalDateTimeParser.parse(deadLine);
 
-        return ResponseEntity.ok(taskService.update(id, name, formattedDeadline, user.getId()));
+        TaskDTO task = taskService.update(id, name, formattedDeadline, user.id(), parseIfMatch(ifMatch));
+        return ResponseEntity.ok().eTag(String.valueOf(task.getVersion())).body(task);
     }
 
     @PatchMapping("/{id}")
-    public ResponseEntity<TaskDTO> finish(@PathVariable UUID id,@Parameter(hidden = true) @AuthenticationPrincipal UserEntity user) {
-        return ResponseEntity.ok(taskService.finish(id, user.getId()));
+    public ResponseEntity<TaskDTO> finish(@PathVariable UUID id,
+                                          @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                          @Parameter(hidden = true) @AuthenticationPrincipal UserPrincipal user) {
+        TaskDTO task = taskService.finish(id, user.id(), parseIfMatch(ifMatch));
+        return ResponseEntity.ok().eTag(String.valueOf(task.getVersion())).body(task);
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> delete(@PathVariable UUID id, @Parameter(hidden = true) @AuthenticationPrincipal UserEntity user) {
-        taskService.delete(id, user.getId());
+    public ResponseEntity<Void> delete(@PathVariable UUID id, @Parameter(hidden = true) @AuthenticationPrincipal UserPrincipal user) {
+        taskService.delete(id, user.id());
         return ResponseEntity.noContent().build();
     }
+
+    // The ETag of a task is its version, a missing header or * applies the change to any version
+    private static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*"))
+            return null;
+
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/"))
+            tag = tag.substring(2);
+        try {
+            return Long.parseLong(tag.replace("\"", ""));
+        } catch (NumberFormatException ex) {
+            throw new BasicException(Map.of("If-Match", "If-Match must hold a single task ETag"), HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    private static TaskStatus parseStatus(String status) {
+        if (status == null)
+            return null;
+        try {
+            return TaskStatus.valueOf(status.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            throw new BasicException(Map.of("status", "Status must be one of " + Arrays.toString(TaskStatus.values())), HttpStatus.BAD_REQUEST);
+        }
+    }
 }
@@ -0,0 +1,37 @@
+package com.example.kuby.todolist;
+
+import com.example.kuby.exceptions.BasicException;
+import org.springframework.http.HttpStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+
+// Position after the last task of a page in the (dead_line, id) order, handed out to clients as an opaque string
+record TaskCursor(LocalDateTime deadLine, UUID id) {
+    // Sorts before every task, used for the first page
+    static final TaskCursor START = new TaskCursor(LocalDateTime.of(1, 1, 1, 0, 0), new UUID(0, 0));
+    private static final char SEPARATOR = '|';
+
+    static TaskCursor after(TaskView task) {
+        return new TaskCursor(task.deadLine(), task.id());
+    }
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((deadLine.toString() + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static TaskCursor decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separatorIndex = decoded.indexOf(SEPARATOR);
+            return new TaskCursor(LocalDateTime.parse(decoded.substring(0, separatorIndex)),
+                    UUID.fromString(decoded.substring(separatorIndex + 1)));
+        } catch (RuntimeException ex) {
+            throw new BasicException(Map.of("cursor", "Cursor is not valid"), HttpStatus.BAD_REQUEST);
+        }
+    }
+}
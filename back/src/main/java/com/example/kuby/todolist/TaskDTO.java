@@ -13,4 +13,5 @@ public class TaskDTO {
     private String deadLine;
     private Boolean isFinished;
     private Boolean isExpired;
+    private Long version;
 }
@@ -0,0 +1,40 @@
+package com.example.kuby.todolist;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Keeps the derived {@code is_expired} column roughly in sync with {@code dead_line}. Reads never depend on it,
+ * so the sweep runs in small batches, each in its own transaction, walking the partial index on unexpired tasks.
+ */
+@Slf4j
+@Component
+public class TaskExpirySweeper {
+    private final TaskRepo taskRepo;
+    private final int batchSize;
+
+    public TaskExpirySweeper(TaskRepo taskRepo,
+                             @Value("${task.expiry.sweep.batch-size:500}") int batchSize) {
+        this.taskRepo = taskRepo;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${task.expiry.sweep.interval.ms:60000}",
+            fixedDelayString = "${task.expiry.sweep.interval.ms:60000}")
+    public void sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        int swept = 0;
+        int updated;
+        do {
+            updated = taskRepo.markExpiredBatch(now, batchSize);
+            swept += updated;
+        } while (updated == batchSize);
+
+        if (swept > 0)
+            log.debug("Marked {} tasks as expired", swept);
+    }
+}
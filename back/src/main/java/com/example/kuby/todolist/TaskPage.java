@@ -0,0 +1,7 @@
+package com.example.kuby.todolist;
+
+import java.util.List;
+
+// nextCursor is null on the last page
+public record TaskPage(List<TaskDTO> items, String nextCursor) {
+}
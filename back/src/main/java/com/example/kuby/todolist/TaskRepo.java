@@ -1,10 +1,12 @@
 package com.example.kuby.todolist;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -13,19 +15,59 @@ import java.util.UUID;
 @Repository
 public interface TaskRepo extends JpaRepository<Task, UUID> {
     List<Task> findAllByCreatorId(UUID userId);
-    Integer deleteByIdAndCreatorId(UUID taskId, UUID creatorId);
-    Optional<Task> findByIdAndCreatorId(UUID taskId, UUID creatorId);
-    @Modifying
-    @Query("UPDATE Task t SET t.isFinished = :isFinished WHERE t.id = :id AND t.creator.id = :creatorId")
-    int updateIsFinishedByIdAndCreatorId(@Param("id") UUID id, @Param("creatorId") UUID creatorId, @Param("isFinished") Boolean isFinished);
+    boolean existsByIdAndCreatorId(UUID taskId, UUID creatorId);
     @Modifying
+    @Query("DELETE FROM Task t WHERE t.id = :id AND t.creator.id = :creatorId")
+    int deleteByIdAndCreatorId(@Param("id") UUID taskId, @Param("creatorId") UUID creatorId);
+    // Mutations below are single conditional statements returning the new row, a null expectedVersion skips the
+    // version check and an empty result means the task is missing or its version moved on
     @Query(value = "UPDATE task " +
-            "SET is_expired = CASE " +
-            "    WHEN dead_line < :currentDateTime THEN true " +
-            "    ELSE false " +
-            "END " +
-            "WHERE creator_id = :creatorId " +
+            "SET name = COALESCE(CAST(:name AS varchar), name), " +
+            "    dead_line = COALESCE(CAST(:deadLine AS timestamp), dead_line), " +
+            "    is_expired = COALESCE(CAST(:deadLine AS timestamp), dead_line) <= :currentDateTime, " +
+            "    version = version + 1 " +
+            "WHERE id = :id AND creator_id = :creatorId " +
+            "AND (CAST(:expectedVersion AS bigint) IS NULL OR version = CAST(:expectedVersion AS bigint)) " +
+            "RETURNING *", nativeQuery = true)
+    Optional<Task> updateNameAndDeadLine(@Param("id") UUID id,
+                                         @Param("creatorId") UUID creatorId,
+                                         @Param("name") String name,
+                                         @Param("deadLine") LocalDateTime deadLine,
+                                         @Param("currentDateTime") LocalDateTime currentDateTime,
+                                         @Param("expectedVersion") Long expectedVersion);
+    @Query(value = "UPDATE task SET is_finished = true, version = version + 1 " +
+            "WHERE id = :id AND creator_id = :creatorId " +
+            "AND (CAST(:expectedVersion AS bigint) IS NULL OR version = CAST(:expectedVersion AS bigint)) " +
             "RETURNING *", nativeQuery = true)
-    List<Task> updateExpiredAndGetAllByCreatorId(@Param("creatorId") UUID creatorId,
-                                                 @Param("currentDateTime") LocalDateTime currentDateTime);
+    Optional<Task> finish(@Param("id") UUID id,
+                          @Param("creatorId") UUID creatorId,
+                          @Param("expectedVersion") Long expectedVersion);
+    // Keyset page in (dead_line, id) order, a null finished matches both states. Callers raise from to the cursor's
+    // deadline, so the range scan starts at the cursor and the OR only drops the ties already returned
+    @Query("SELECT new com.example.kuby.todolist.TaskView(t.id, t.creator.id, t.name, t.deadLine, t.isFinished, t.version) " +
+            "FROM Task t " +
+            "WHERE t.creator.id = :creatorId " +
+            "AND t.deadLine >= :from AND t.deadLine <= :to " +
+            "AND (:finished IS NULL OR t.isFinished = :finished) " +
+            "AND (t.deadLine > :afterDeadLine OR (t.deadLine = :afterDeadLine AND t.id > :afterId)) " +
+            "ORDER BY t.deadLine, t.id")
+    List<TaskView> findPageByCreatorId(@Param("creatorId") UUID creatorId,
+                                   @Param("finished") Boolean finished,
+                                   @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to,
+                                   @Param("afterDeadLine") LocalDateTime afterDeadLine,
+                                   @Param("afterId") UUID afterId,
+                                   Limit limit);
+    // Flips the cold is_expired column for one batch of overdue tasks, rows locked by writers are left for the next run
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE task SET is_expired = true " +
+            "WHERE id IN (" +
+            "    SELECT id FROM task " +
+            "    WHERE NOT is_expired AND dead_line <= :currentDateTime " +
+            "    ORDER BY dead_line " +
+            "    LIMIT :batchSize " +
+            "    FOR UPDATE SKIP LOCKED" +
+            ")", nativeQuery = true)
+    int markExpiredBatch(@Param("currentDateTime") LocalDateTime currentDateTime, @Param("batchSize") int batchSize);
 }
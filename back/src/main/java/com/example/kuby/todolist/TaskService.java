@@ -4,11 +4,13 @@ import com.example.kuby.exceptions.BasicException;
 import com.example.kuby.foruser.UserEntity;
 import com.example.kuby.utils.Mapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -16,6 +18,9 @@ import java.util.UUID;
 @Service
 @RequiredArgsConstructor
 public class TaskService {
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final LocalDateTime LAST_DEADLINE = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
     private final TaskRepo taskRepo;
     private final Mapper mapper;
 
@@ -30,33 +35,47 @@ public class TaskService {
                 .build()));
     }
 
-    @Transactional
-    public List<TaskDTO> getAll(UUID userId) {
-        return taskRepo.updateExpiredAndGetAllByCreatorId(userId, LocalDateTime.now()).stream()
-                .map(mapper::convertTaskToDTO)
-                .toList();
-    }
+    @Transactional(readOnly = true)
+    public TaskPage getPage(UUID userId, TaskStatus status, LocalDateTime from, LocalDateTime to, String cursor, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE)
+            throw new BasicException(Map.of("limit", "Limit must be between 1 and " + MAX_PAGE_SIZE), HttpStatus.BAD_REQUEST);
 
-    @Transactional
-    public TaskDTO update(UUID id, String name, LocalDateTime deadLine, UUID userId) {
-        Task task = taskRepo.findByIdAndCreatorId(id, userId).orElseThrow(() ->
-                new BasicException(Map.of("id", "Task with such id not found"), HttpStatus.NOT_FOUND));
+        // Status filters and the cursor narrow the deadline range, so a page scans from the cursor onwards
+        // instead of skipping every row of the pages before it
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        LocalDateTime lower = from == null ? TaskCursor.START.deadLine() : from;
+        LocalDateTime upper = to == null ? LAST_DEADLINE : to;
+        Boolean finished = null;
+        if (status == TaskStatus.OPEN) {
+            finished = false;
+            lower = max(lower, now.plus(1, ChronoUnit.MICROS));
+        } else if (status == TaskStatus.FINISHED) {
+            finished = true;
+        } else if (status == TaskStatus.EXPIRED) {
+            upper = min(upper, now);
+        }
 
-        if (name != null)
-            task.setName(name);
-        if (deadLine != null)
-            task.setDeadLine(deadLine);
+        TaskCursor after = cursor == null ? TaskCursor.START : TaskCursor.decode(cursor);
+        lower = max(lower, after.deadLine());
+        List<TaskView> tasks = taskRepo.findPageByCreatorId(userId, finished, lower, upper,
+                after.deadLine(), after.id(), Limit.of(limit + 1));
 
-        return mapper.convertTaskToDTO(taskRepo.save(task));
+        boolean hasMore = tasks.size() > limit;
+        List<TaskView> page = hasMore ? tasks.subList(0, limit) : tasks;
+        return new TaskPage(page.stream().map(mapper::convertTaskViewToDTO).toList(),
+                hasMore ? TaskCursor.after(page.get(limit - 1)).encode() : null);
     }
 
     @Transactional
-    public TaskDTO finish(UUID id, UUID userId) {
-        if (taskRepo.updateIsFinishedByIdAndCreatorId(id, userId, true) != 1)
-            throw new BasicException(Map.of("taskId", "Task with such id not found"), HttpStatus.NOT_FOUND);
+    public TaskDTO update(UUID id, String name, LocalDateTime deadLine, UUID userId, Long expectedVersion) {
+        return mapper.convertTaskToDTO(taskRepo.updateNameAndDeadLine(id, userId, name, deadLine, LocalDateTime.now(), expectedVersion)
+                .orElseThrow(() -> notUpdated("id", id, userId)));
+    }
 
-        return mapper.convertTaskToDTO(taskRepo.findByIdAndCreatorId(id, userId).orElseThrow(() ->
-                new BasicException(Map.of("taskId", "Task with such id not found"), HttpStatus.NOT_FOUND)));
+    @Transactional
+    public TaskDTO finish(UUID id, UUID userId, Long expectedVersion) {
+        return mapper.convertTaskToDTO(taskRepo.finish(id, userId, expectedVersion)
+                .orElseThrow(() -> notUpdated("taskId", id, userId)));
     }
 
     @Transactional
@@ -64,4 +83,19 @@ public class TaskService {
         if (taskRepo.deleteByIdAndCreatorId(taskId, userId) != 1)
             throw new BasicException(Map.of("taskId", "Task with such id not found"), HttpStatus.NOT_FOUND);
     }
+
+    // Only reached when the conditional update matched nothing, so the happy path stays a single statement
+    private BasicException notUpdated(String field, UUID id, UUID userId) {
+        if (taskRepo.existsByIdAndCreatorId(id, userId))
+            return new BasicException(Map.of(field, "Task was modified by another request, reload it and retry"), HttpStatus.PRECONDITION_FAILED);
+        return new BasicException(Map.of(field, "Task with such id not found"), HttpStatus.NOT_FOUND);
+    }
+
+    private static LocalDateTime max(LocalDateTime first, LocalDateTime second) {
+        return first.isAfter(second) ? first : second;
+    }
+
+    private static LocalDateTime min(LocalDateTime first, LocalDateTime second) {
+        return first.isBefore(second) ? first : second;
+    }
 }
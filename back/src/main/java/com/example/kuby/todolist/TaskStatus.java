@@ -0,0 +1,8 @@
+package com.example.kuby.todolist;
+
+// Mirrors the tabs of the task list, expired tasks may also be finished
+public enum TaskStatus {
+    OPEN,
+    FINISHED,
+    EXPIRED
+}
@@ -0,0 +1,8 @@
+package com.example.kuby.todolist;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Read model selected straight from the task table, never attached to the persistence context
+public record TaskView(UUID id, UUID creatorId, String name, LocalDateTime deadLine, Boolean isFinished, Long version) {
+}
@@ -1,16 +1,42 @@
 package com.example.kuby.utils;
 
+import com.example.kuby.foruser.UserEntity;
 import com.example.kuby.todolist.Task;
 import com.example.kuby.todolist.TaskDTO;
-import lombok.RequiredArgsConstructor;
-import org.modelmapper.ModelMapper;
-import org.springframework.stereotype.Component;
-
-@Component
-@RequiredArgsConstructor
-public class Mapper {
-    private final ModelMapper mapper;
+import com.example.kuby.todolist.TaskView;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingConstants;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// Implemented at build time by MapStruct as MapperImpl, the generated code is plain getter and setter calls
+@org.mapstruct.Mapper(componentModel = MappingConstants.ComponentModel.SPRING)
+public abstract class Mapper {
     public TaskDTO convertTaskToDTO(Task task){
-        return mapper.map(task, TaskDTO.class);
+        TaskDTO dto = map(task);
+        // is_expired is only swept periodically, the deadline is the source of truth
+        dto.setIsExpired(!task.getDeadLine().isAfter(LocalDateTime.now()));
+        return dto;
+    }
+
+    public TaskDTO convertTaskViewToDTO(TaskView view){
+        TaskDTO dto = map(view);
+        dto.setIsExpired(!view.deadLine().isAfter(LocalDateTime.now()));
+        return dto;
+    }
+
+    @Mapping(target = "creatorId", source = "creator")
+    protected abstract TaskDTO map(Task task);
+
+    @Mapping(target = "isExpired", ignore = true)
+    protected abstract TaskDTO map(TaskView view);
+
+    protected UUID map(UserEntity user) {
+        return user == null ? null : user.getId();
+    }
+
+    protected String map(LocalDateTime localDateTime) {
+        return localDateTime == null ? null : LocalDateTimeFormatter.convertToString(localDateTime);
     }
 }
@@ -0,0 +1,2 @@
+-- Runs after Hibernate updated the schema, holds what the entity mappings can't express
+CREATE INDEX IF NOT EXISTS idx_task_unexpired_dead_line ON task (dead_line) WHERE NOT is_expired;
@@ -0,0 +1,33 @@
+-- Merges claim actions into the blacklist entry of a token and refreshes its expiry in one step.
+-- KEYS[1] - blacklist hash
+-- ARGV[1] - time to live in milliseconds, ARGV[2] - revision field, ARGV[3] - prefix of value fields
+-- ARGV[4] - number of action types n, then n action name/priority pairs
+-- followed by claim/action/value triples. Values are prefixed with '+', an empty one removes the stored value
+-- Returns the new revision of the entry, 0 when there was nothing to write
+local priorities = {}
+local typeCount = tonumber(ARGV[4])
+for i = 5, 4 + typeCount * 2, 2 do
+    priorities[ARGV[i]] = tonumber(ARGV[i + 1])
+end
+
+local first = 5 + typeCount * 2
+if first > #ARGV and redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+
+for i = first, #ARGV, 3 do
+    local claim, action, value = ARGV[i], ARGV[i + 1], ARGV[i + 2]
+    local existing = redis.call('HGET', KEYS[1], claim)
+    if not existing or priorities[action] >= priorities[existing] then
+        redis.call('HSET', KEYS[1], claim, action)
+        if value == '' then
+            redis.call('HDEL', KEYS[1], ARGV[3] .. claim)
+        else
+            redis.call('HSET', KEYS[1], ARGV[3] .. claim, string.sub(value, 2))
+        end
+    end
+end
+
+local revision = redis.call('HINCRBY', KEYS[1], ARGV[2], 1)
+redis.call('PEXPIRE', KEYS[1], ARGV[1])
+return revision
@@ -0,0 +1,9 @@
+-- Fixed window counter used by @WithRateLimitProtection.
+-- KEYS[1] - counter of the current window
+-- ARGV[1] - weight of the call, ARGV[2] - window (ms)
+-- Returns the counter after the call was charged
+local count = redis.call('INCRBY', KEYS[1], ARGV[1])
+if redis.call('PTTL', KEYS[1]) < 0 then
+    redis.call('PEXPIRE', KEYS[1], ARGV[2])
+end
+return count
@@ -0,0 +1,35 @@
+-- Generic cell rate algorithm: one theoretical arrival time per client instead of a request log.
+-- KEYS[1] - theoretical arrival time (ms)
+-- KEYS[2] - block marker holding the unblock time
+-- ARGV[1] - current time (ms), ARGV[2] - window (ms), ARGV[3] - limit,
+-- ARGV[4] - block duration (ms), ARGV[5] - requested permits
+-- Returns {granted permits, remaining quota, blocked until (ms, 0 when not blocked)}
+local now = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local limit = tonumber(ARGV[3])
+local blockDuration = tonumber(ARGV[4])
+local requested = tonumber(ARGV[5])
+
+local blockedUntil = tonumber(redis.call('GET', KEYS[2]))
+if blockedUntil and blockedUntil > now then
+    return {0, 0, blockedUntil}
+end
+
+local interval = window / limit
+local tat = tonumber(redis.call('GET', KEYS[1])) or now
+if tat < now then
+    tat = now
+end
+
+local available = math.floor((now + window - tat) / interval + 1e-9)
+
+if available <= 0 then
+    blockedUntil = now + blockDuration
+    redis.call('SET', KEYS[2], blockedUntil, 'PX', blockDuration)
+    return {0, 0, blockedUntil}
+end
+
+local granted = math.min(requested, available)
+local newTat = tat + granted * interval
+redis.call('SET', KEYS[1], newTat, 'PX', math.ceil(newTat - now))
+return {granted, available - granted, 0}
@@ -0,0 +1,16 @@
+-- Returns unused permits by moving the theoretical arrival time back, never behind the current time.
+-- KEYS[1] - theoretical arrival time (ms)
+-- ARGV[1] - current time (ms), ARGV[2] - window (ms), ARGV[3] - limit, ARGV[4] - permits to return
+local now = tonumber(ARGV[1])
+local tat = tonumber(redis.call('GET', KEYS[1]))
+if not tat then
+    return 0
+end
+
+local newTat = tat - tonumber(ARGV[4]) * tonumber(ARGV[2]) / tonumber(ARGV[3])
+if newTat <= now then
+    redis.call('DEL', KEYS[1])
+else
+    redis.call('SET', KEYS[1], newTat, 'PX', math.ceil(newTat - now))
+end
+return 0
@@ -0,0 +1,31 @@
+-- KEYS[1] - sorted set with one member per granted permit
+-- KEYS[2] - block marker holding the unblock time
+-- ARGV[1] - current time (ms), ARGV[2] - window (ms), ARGV[3] - limit,
+-- ARGV[4] - block duration (ms), ARGV[5] - requested permits, ARGV[6] - unique member prefix
+-- Returns {granted permits, remaining quota, blocked until (ms, 0 when not blocked)}
+local now = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local limit = tonumber(ARGV[3])
+local blockDuration = tonumber(ARGV[4])
+local requested = tonumber(ARGV[5])
+
+local blockedUntil = tonumber(redis.call('GET', KEYS[2]))
+if blockedUntil and blockedUntil > now then
+    return {0, 0, blockedUntil}
+end
+
+redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', now - window)
+local available = limit - redis.call('ZCARD', KEYS[1])
+
+if available <= 0 then
+    blockedUntil = now + blockDuration
+    redis.call('SET', KEYS[2], blockedUntil, 'PX', blockDuration)
+    return {0, 0, blockedUntil}
+end
+
+local granted = math.min(requested, available)
+for i = 1, granted do
+    redis.call('ZADD', KEYS[1], now, ARGV[6] .. ':' .. i)
+end
+redis.call('PEXPIRE', KEYS[1], window)
+return {granted, available - granted, 0}
@@ -0,0 +1,14 @@
+-- Returns unused permits of a lease by removing members that lease added, the log entries of other leases
+-- and of admitted requests stay. Members of a lease share one score, so which of them go doesn't matter.
+-- KEYS[1] - sorted set with one member per granted permit
+-- ARGV[1] - current time (ms), ARGV[2] - window (ms), ARGV[3] - limit, ARGV[4] - permits to return,
+-- ARGV[5] - lease id the permits were acquired with
+if ARGV[5] == '' then
+    return 0
+end
+
+local members = {}
+for i = 1, tonumber(ARGV[4]) do
+    members[i] = ARGV[5] .. ':' .. i
+end
+return redis.call('ZREM', KEYS[1], unpack(members))
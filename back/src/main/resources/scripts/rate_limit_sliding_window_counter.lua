@@ -0,0 +1,36 @@
+-- Sliding window counter: the previous and the current fixed window are kept as two hash fields
+-- and the previous one is weighted by how much of it still overlaps the sliding window.
+-- KEYS[1] - hash of counters keyed by window index
+-- KEYS[2] - block marker holding the unblock time
+-- ARGV[1] - current time (ms), ARGV[2] - window (ms), ARGV[3] - limit,
+-- ARGV[4] - block duration (ms), ARGV[5] - requested permits
+-- Returns {granted permits, remaining quota, blocked until (ms, 0 when not blocked)}
+local now = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local limit = tonumber(ARGV[3])
+local blockDuration = tonumber(ARGV[4])
+local requested = tonumber(ARGV[5])
+
+local blockedUntil = tonumber(redis.call('GET', KEYS[2]))
+if blockedUntil and blockedUntil > now then
+    return {0, 0, blockedUntil}
+end
+
+local currentIndex = math.floor(now / window)
+local overlap = 1 - (now - currentIndex * window) / window
+local counters = redis.call('HMGET', KEYS[1], currentIndex, currentIndex - 1)
+local current = tonumber(counters[1]) or 0
+local previous = tonumber(counters[2]) or 0
+local available = math.floor(limit - previous * overlap - current)
+
+if available <= 0 then
+    blockedUntil = now + blockDuration
+    redis.call('SET', KEYS[2], blockedUntil, 'PX', blockDuration)
+    return {0, 0, blockedUntil}
+end
+
+local granted = math.min(requested, available)
+redis.call('HINCRBY', KEYS[1], currentIndex, granted)
+redis.call('HDEL', KEYS[1], currentIndex - 2)
+redis.call('PEXPIRE', KEYS[1], 2 * window)
+return {granted, available - granted, 0}
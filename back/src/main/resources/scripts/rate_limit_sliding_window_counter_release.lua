@@ -0,0 +1,11 @@
+-- Returns unused permits to the current window counter, never below zero.
+-- KEYS[1] - hash of counters keyed by window index
+-- ARGV[1] - current time (ms), ARGV[2] - window (ms), ARGV[3] - limit, ARGV[4] - permits to return
+local currentIndex = math.floor(tonumber(ARGV[1]) / tonumber(ARGV[2]))
+local current = tonumber(redis.call('HGET', KEYS[1], currentIndex))
+if not current then
+    return 0
+end
+
+redis.call('HSET', KEYS[1], currentIndex, math.max(0, current - tonumber(ARGV[4])))
+return 0
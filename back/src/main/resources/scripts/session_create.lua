@@ -0,0 +1,14 @@
+-- Stores a new token family and indexes it under its user.
+-- KEYS[1] - session hash, KEYS[2] - session index of the user
+-- ARGV[1] - family id, ARGV[2] - now, ARGV[3] - refresh token expiry (epoch ms)
+-- ARGV[4..] - field/value pairs of the session hash
+redis.call('HSET', KEYS[1], unpack(ARGV, 4))
+redis.call('PEXPIREAT', KEYS[1], ARGV[3])
+redis.call('SADD', KEYS[2], ARGV[1])
+
+-- The index lives as long as the longest living session in it
+local ttl = tonumber(ARGV[3]) - tonumber(ARGV[2])
+if redis.call('PTTL', KEYS[2]) < ttl then
+    redis.call('PEXPIRE', KEYS[2], ttl)
+end
+return 1
@@ -0,0 +1,14 @@
+-- Revokes a token family of the given user.
+-- KEYS[1] - session hash, KEYS[2] - session index of the user
+-- ARGV[1] - family id, ARGV[2] - user id
+-- Returns the revoked session hash as a flat field/value list, empty when there was nothing to revoke
+local session = redis.call('HGETALL', KEYS[1])
+for i = 1, #session, 2 do
+    if session[i] == 'userId' and session[i + 1] ~= ARGV[2] then
+        return {}
+    end
+end
+
+redis.call('DEL', KEYS[1])
+redis.call('SREM', KEYS[2], ARGV[1])
+return session
@@ -0,0 +1,47 @@
+-- Rotates the tokens of a family when the presented refresh token is its current one.
+-- KEYS[1] - session hash, KEYS[2] - session index of the user
+-- ARGV[1] - family id, ARGV[2] - user id, ARGV[3] - presented refresh jwt id, ARGV[4] - now (epoch ms),
+-- ARGV[5] - throttle (ms), ARGV[6] - new access jwt id, ARGV[7] - new refresh jwt id,
+-- ARGV[8] - new access expiry, ARGV[9] - new refresh expiry (epoch ms)
+-- Returns the outcome followed by the session hash as a flat field/value list, the rotated hash when
+-- ROTATED and the revoked one when REUSED
+local session = redis.call('HGETALL', KEYS[1])
+if #session == 0 then
+    return {'MISSING'}
+end
+
+local fields = {}
+for i = 1, #session, 2 do
+    fields[session[i]] = session[i + 1]
+end
+
+if fields['userId'] ~= ARGV[2] then
+    return {'MISSING'}
+end
+
+if tonumber(fields['updatedAt']) + tonumber(ARGV[5]) > tonumber(ARGV[4]) then
+    return {'THROTTLED'}
+end
+
+local reply
+if fields['refreshJwtId'] ~= ARGV[3] then
+    redis.call('DEL', KEYS[1])
+    redis.call('SREM', KEYS[2], ARGV[1])
+    reply = {'REUSED'}
+else
+    redis.call('HSET', KEYS[1], 'accessJwtId', ARGV[6], 'refreshJwtId', ARGV[7], 'updatedAt', ARGV[4],
+            'accessExpiresAt', ARGV[8], 'refreshExpiresAt', ARGV[9])
+    redis.call('PEXPIREAT', KEYS[1], ARGV[9])
+
+    local ttl = tonumber(ARGV[9]) - tonumber(ARGV[4])
+    if redis.call('PTTL', KEYS[2]) < ttl then
+        redis.call('PEXPIRE', KEYS[2], ttl)
+    end
+    session = redis.call('HGETALL', KEYS[1])
+    reply = {'ROTATED'}
+end
+
+for i = 1, #session do
+    reply[i + 1] = session[i]
+end
+return reply
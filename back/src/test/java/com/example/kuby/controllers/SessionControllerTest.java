@@ -0,0 +1,173 @@
+package com.example.kuby.controllers;
+
+import com.auth0.jwt.JWT;
+import com.example.kuby.KubyApplication;
+import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.security.models.request.LoginRequest;
+import com.example.kuby.utils.DbUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redis.testcontainers.RedisContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Refresh rotation and the session endpoints over the Redis token family store.
+// Throttle and grace are off so a refresh right after login rotates and a replay is caught as reuse.
+@Testcontainers
+@SpringBootTest(classes = {KubyApplication.class}, properties = {
+        "security.session.refresh.throttle.ms=0",
+        "security.session.refresh.grace.ms=0"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@AutoConfigureMockMvc
+public class SessionControllerTest {
+    @Autowired
+    private MockMvc mvc;
+    @Autowired
+    private DbUtils dbUtils;
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:15-alpine"));
+    @Container
+    @ServiceConnection
+    static RedisContainer redis = new RedisContainer(DockerImageName.parse("redis:6.2.6"));
+
+    @BeforeAll
+    static void beforeAll() {
+        postgres.start();
+        redis.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        postgres.stop();
+        redis.stop();
+    }
+
+    @Test
+    public void reusedRefreshToken_revokesTheFamily_test() throws Exception {
+        UserEntity user = dbUtils.createUser();
+        String[] login = login(user, "device-a");
+
+        MockHttpServletResponse refreshed = mvc.perform(post("/api/user/token/refresh")
+                        .header("Authorization", login[0])
+                        .header("X-Refresh-Token", login[1]))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        String[] rotated = {refreshed.getHeader("Authorization"), refreshed.getHeader("X-Refresh-Token")};
+        assertNotEquals(login[1], rotated[1]);
+        mvc.perform(post("/testing").header("Authorization", rotated[0]))
+                .andExpect(status().isNoContent());
+
+        mvc.perform(post("/api/user/token/refresh")
+                        .header("Authorization", login[0])
+                        .header("X-Refresh-Token", login[1]))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.errors['refresh_token']").value("Refresh Token was used! You can use refresh token only once."));
+
+        // The access token issued by the rotation is blacklisted and the family is gone
+        mvc.perform(post("/testing").header("Authorization", rotated[0]))
+                .andExpect(status().is(420));
+        mvc.perform(post("/api/user/token/refresh")
+                        .header("Authorization", rotated[0])
+                        .header("X-Refresh-Token", rotated[1]))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getSessions_listsEveryDevice_test() throws Exception {
+        UserEntity user = dbUtils.createUser();
+        String[] deviceA = login(user, "device-a");
+        login(user, "device-b");
+
+        mvc.perform(get("/api/user/sessions").header("Authorization", deviceA[0]))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[*].device", containsInAnyOrder("device-a", "device-b")))
+                .andExpect(jsonPath("$[?(@.device == 'device-a')].current").value(true))
+                .andExpect(jsonPath("$[?(@.device == 'device-b')].current").value(false));
+    }
+
+    @Test
+    public void revokeSession_leavesTheOtherDeviceWorking_test() throws Exception {
+        UserEntity user = dbUtils.createUser();
+        String[] deviceA = login(user, "device-a");
+        String[] deviceB = login(user, "device-b");
+
+        mvc.perform(delete("/api/user/sessions/" + familyId(deviceB)).header("Authorization", deviceA[0]))
+                .andExpect(status().isNoContent());
+
+        mvc.perform(post("/testing").header("Authorization", deviceB[0]))
+                .andExpect(status().is(420));
+        mvc.perform(post("/api/user/token/refresh")
+                        .header("Authorization", deviceB[0])
+                        .header("X-Refresh-Token", deviceB[1]))
+                .andExpect(status().isNotFound());
+
+        mvc.perform(post("/testing").header("Authorization", deviceA[0]))
+                .andExpect(status().isNoContent());
+        mvc.perform(get("/api/user/sessions").header("Authorization", deviceA[0]))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].device").value("device-a"));
+        mvc.perform(delete("/api/user/sessions/" + familyId(deviceB)).header("Authorization", deviceA[0]))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getSessions_dropsExpiredFamiliesFromTheIndex_test() throws Exception {
+        UserEntity user = dbUtils.createUser();
+        String[] deviceA = login(user, "device-a");
+        String[] deviceB = login(user, "device-b");
+        redisTemplate.delete("session:" + familyId(deviceB));
+
+        mvc.perform(get("/api/user/sessions").header("Authorization", deviceA[0]))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].device").value("device-a"));
+
+        assertEquals(Boolean.FALSE, redisTemplate.opsForSet().isMember("user_sessions:" + user.getId(), familyId(deviceB)));
+        assertEquals(Boolean.TRUE, redisTemplate.opsForSet().isMember("user_sessions:" + user.getId(), familyId(deviceA)));
+    }
+
+    // Returns the Authorization header and the refresh token
+    private String[] login(UserEntity user, String device) throws Exception {
+        MockHttpServletResponse response = mvc.perform(post("/api/user/login")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header("User-Agent", device)
+                        .content(objectMapper.writeValueAsString(new LoginRequest(user.getLogin(), "18-Bad-Boy-18"))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse();
+        return new String[]{response.getHeader("Authorization"), response.getHeader("X-Refresh-Token")};
+    }
+
+    private static String familyId(String[] tokens) {
+        return JWT.decode(tokens[1]).getClaim("familyId").asString();
+    }
+}
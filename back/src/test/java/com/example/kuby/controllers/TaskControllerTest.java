@@ -8,6 +8,7 @@ import com.example.kuby.todolist.Task;
 import com.example.kuby.todolist.TaskRepo;
 import com.example.kuby.utils.DbUtils;
 import com.example.kuby.utils.JsonPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.redis.testcontainers.RedisContainer;
 import org.junit.jupiter.api.*;
@@ -18,6 +19,8 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
@@ -25,10 +28,21 @@ import org.testcontainers.utility.DockerImageName;
 
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import static com.example.kuby.security.util.parsers.AuthHeaderParser.parseUserIdFromAuthHeader;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @Testcontainers
@@ -121,6 +135,22 @@ public class TaskControllerTest {
 
     @Test
     @Order(4)
+    public void finish_staleIfMatch_test() throws Exception {
+        mvc.perform(patch("/api/task/" + taskId.toString())
+                        .header("If-Match", "\"0\"")
+                        .header("Authorization", authHeader))
+                .andExpect(status().isPreconditionFailed());
+
+        mvc.perform(patch("/api/task/" + taskId.toString())
+                        .header("If-Match", "\"1\"")
+                        .header("Authorization", authHeader))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"2\""))
+                .andExpect(jsonPath("$.isFinished").value(true));
+    }
+
+    @Test
+    @Order(5)
     public void delete_success_test() throws Exception{
         mvc.perform(delete("/api/task/" +taskId.toString())
                 .characterEncoding(StandardCharsets.UTF_8)
@@ -130,7 +160,7 @@ public class TaskControllerTest {
     }
 
     @Test
-    @Order(5)
+    @Order(6)
     public void getAll_success_test() throws  Exception{
         LocalDateTime expiredDeadline = LocalDateTime.now().plusSeconds(5);
 
@@ -159,4 +189,91 @@ public class TaskControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(result -> JsonPrettyPrinter.print(result.getResponse().getContentAsString()));
     }
+
+    @Test
+    @Order(7)
+    public void getPage_success_test() throws Exception {
+        mvc.perform(get("/api/task")
+                        .param("limit", "4")
+                        .header("Authorization", authHeader))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(4))
+                .andExpect(jsonPath("$.nextCursor").isNotEmpty());
+
+        mvc.perform(get("/api/task")
+                        .param("status", "expired")
+                        .header("Authorization", authHeader))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(7))
+                .andExpect(jsonPath("$.items[*].isExpired").value(everyItem(is(true))))
+                .andExpect(jsonPath("$.nextCursor").value(nullValue()));
+    }
+
+    @Test
+    @Order(8)
+    public void getPage_invalidCursor_test() throws Exception {
+        mvc.perform(get("/api/task")
+                        .param("cursor", "not-a-cursor")
+                        .header("Authorization", authHeader))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Order(9)
+    public void getPage_walksTiedDeadlinesWithoutDuplicatesOrGaps_test() throws Exception {
+        UserEntity user = dbUtils.createUser();
+        MvcResult login = mvc.perform(post("/api/user/login")
+                        .characterEncoding(StandardCharsets.UTF_8)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new LoginRequest(user.getLogin(), "18-Bad-Boy-18"))))
+                .andExpect(status().isOk())
+                .andReturn();
+        String userAuthHeader = login.getResponse().getHeader("Authorization");
+
+        // Four tasks share one deadline and three another, so most pages end in the middle of a tie
+        LocalDateTime deadLine = LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.SECONDS);
+        List<LocalDateTime> deadLines = List.of(deadLine, deadLine, deadLine, deadLine,
+                deadLine.plusHours(1), deadLine.plusHours(2), deadLine.plusHours(2), deadLine.plusHours(2),
+                deadLine.plusHours(3));
+        Set<UUID> created = new HashSet<>();
+        for (LocalDateTime taskDeadLine : deadLines)
+            created.add(taskRepo.save(Task.builder()
+                    .name("tied task")
+                    .deadLine(taskDeadLine)
+                    .isFinished(false)
+                    .creator(user)
+                    .build()).getId());
+
+        for (String status : new String[]{null, "open"}) {
+            List<UUID> walked = new ArrayList<>();
+            List<LocalDateTime> walkedDeadLines = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                MockHttpServletRequestBuilder request = get("/api/task")
+                        .param("limit", "2")
+                        .header("Authorization", userAuthHeader);
+                if (status != null)
+                    request.param("status", status);
+                if (cursor != null)
+                    request.param("cursor", cursor);
+
+                JsonNode page = objectMapper.readTree(mvc.perform(request)
+                        .andExpect(status().isOk())
+                        .andReturn().getResponse().getContentAsString());
+                for (JsonNode item : page.get("items")) {
+                    walked.add(UUID.fromString(item.get("id").asText()));
+                    walkedDeadLines.add(taskRepo.findById(walked.get(walked.size() - 1)).orElseThrow().getDeadLine());
+                }
+                cursor = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+                pages++;
+            } while (cursor != null && pages <= deadLines.size());
+
+            assertEquals(deadLines.size(), walked.size(), "status " + status);
+            assertEquals(created, new HashSet<>(walked), "status " + status);
+            assertEquals(5, pages, "status " + status);
+            for (int i = 1; i < walkedDeadLines.size(); i++)
+                assertFalse(walkedDeadLines.get(i).isBefore(walkedDeadLines.get(i - 1)), "status " + status);
+        }
+    }
 }
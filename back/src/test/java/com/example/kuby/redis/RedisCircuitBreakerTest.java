@@ -0,0 +1,95 @@
+package com.example.kuby.redis;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RedisCircuitBreakerTest {
+    private static final String CALLER = "test";
+    private static final long OPEN_DURATION = 5000;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final RedisCircuitBreaker circuitBreaker =
+            new RedisCircuitBreaker(new SimpleMeterRegistry(), 2, OPEN_DURATION, clock::get);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void opensAfterConsecutiveFailuresAndFallsBackWithoutCalling() {
+        tripOpen();
+
+        assertEquals("fallback", circuitBreaker.execute(CALLER, this::succeed, () -> "fallback"));
+        assertEquals(0, calls.get());
+        assertEquals(RedisCircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    void closesWhenTheHalfOpenProbeSucceeds() {
+        tripOpen();
+        clock.addAndGet(OPEN_DURATION);
+
+        assertEquals("redis", circuitBreaker.execute(CALLER, this::succeed, () -> "fallback"));
+        assertEquals(1, calls.get());
+        assertEquals(RedisCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void reopensWhenTheHalfOpenProbeFails() {
+        tripOpen();
+        clock.addAndGet(OPEN_DURATION);
+
+        assertEquals("fallback", circuitBreaker.execute(CALLER, this::fail, () -> "fallback"));
+        assertEquals(RedisCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        clock.addAndGet(OPEN_DURATION - 1);
+        assertEquals("fallback", circuitBreaker.execute(CALLER, this::succeed, () -> "fallback"));
+        assertEquals(0, calls.get());
+
+        clock.addAndGet(1);
+        assertEquals("redis", circuitBreaker.execute(CALLER, this::succeed, () -> "fallback"));
+        assertEquals(RedisCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void unexpectedExceptionFromTheProbeReopensInsteadOfStickingHalfOpen() {
+        tripOpen();
+        clock.addAndGet(OPEN_DURATION);
+
+        assertThrows(IllegalStateException.class, () -> circuitBreaker.execute(CALLER, () -> {
+            throw new IllegalStateException("unexpected");
+        }, () -> "fallback"));
+        assertEquals(RedisCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        clock.addAndGet(OPEN_DURATION);
+        assertEquals("redis", circuitBreaker.execute(CALLER, this::succeed, () -> "fallback"));
+        assertEquals(RedisCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        circuitBreaker.execute(CALLER, this::fail, () -> "fallback");
+        circuitBreaker.execute(CALLER, this::succeed, () -> "fallback");
+        circuitBreaker.execute(CALLER, this::fail, () -> "fallback");
+
+        assertEquals(RedisCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    private void tripOpen() {
+        circuitBreaker.execute(CALLER, this::fail, () -> "fallback");
+        circuitBreaker.execute(CALLER, this::fail, () -> "fallback");
+        assertEquals(RedisCircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    private String succeed() {
+        calls.incrementAndGet();
+        return "redis";
+    }
+
+    private String fail() {
+        throw new QueryTimeoutException("Redis command timed out");
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.kuby.security.blacklist;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BloomFilterTest {
+
+    @Test
+    void hasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String jwtId = UUID.randomUUID().toString();
+            filter.put(jwtId);
+            added.add(jwtId);
+        }
+
+        added.forEach(jwtId -> assertTrue(filter.mightContain(jwtId)));
+    }
+
+    @Test
+    void keepsFalsePositiveRateNearConfiguredValueAtCapacity() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++)
+            filter.put(UUID.randomUUID().toString());
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++)
+            if (filter.mightContain(UUID.randomUUID().toString()))
+                falsePositives++;
+
+        assertTrue(falsePositives < 2_000, "false positive rate was " + falsePositives / 100_000.0);
+    }
+
+    @Test
+    void sizesBitsAndProbesFromConfiguration() {
+        BloomFilter filter = new BloomFilter(1_000_000, 0.001);
+        assertEquals(10, filter.hashCount());
+        assertTrue(filter.sizeInBytes() > 1_700_000 && filter.sizeInBytes() < 1_900_000);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.kuby.security.cache;
+
+import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.security.models.enums.Provider;
+import com.example.kuby.security.models.enums.UserRoles;
+import com.example.kuby.security.models.principal.UserPrincipal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class UserPrincipalCacheTest {
+    private static final String CHANNEL = "user_principal_invalidation";
+    private static final String EMAIL = "user@example.com";
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserPrincipalCache cache = new UserPrincipalCache(redisTemplate,
+            mock(RedisMessageListenerContainer.class), meterRegistry, 100, 300);
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Supplier<Optional<UserEntity>> loader = () -> {
+        loads.incrementAndGet();
+        return Optional.of(UserEntity.builder()
+                .id(UUID.randomUUID())
+                .email(EMAIL)
+                .provider(Provider.LOCAL)
+                .roles(UserRoles.USER)
+                .build());
+    };
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void loadsPrincipalOnce() {
+        UserPrincipal first = cache.get(EMAIL, Provider.LOCAL, loader);
+        UserPrincipal second = cache.get(EMAIL, Provider.LOCAL, loader);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidatesAndPublishesImmediatelyOutsideTransactions() {
+        cache.get(EMAIL, Provider.LOCAL, loader);
+
+        cache.invalidate(EMAIL, Provider.LOCAL);
+
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(CHANNEL), body.capture());
+        assertTrue(body.getValue().endsWith("|LOCAL:" + EMAIL));
+        cache.get(EMAIL, Provider.LOCAL, loader);
+        assertEquals(2, loads.get());
+        assertEquals(1, invalidations("local"));
+    }
+
+    @Test
+    void publishesAndEvictsAgainAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        cache.get(EMAIL, Provider.LOCAL, loader);
+
+        cache.invalidate(EMAIL, Provider.LOCAL);
+        verify(redisTemplate, never()).convertAndSend(anyString(), any());
+
+        // A read inside the transaction may cache the row as it was before the commit
+        cache.get(EMAIL, Provider.LOCAL, loader);
+        assertEquals(2, loads.get());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        verify(redisTemplate).convertAndSend(eq(CHANNEL), anyString());
+        cache.get(EMAIL, Provider.LOCAL, loader);
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void evictsOnInvalidationMessage() {
+        cache.get(EMAIL, Provider.LOCAL, loader);
+
+        cache.onMessage(message(System.currentTimeMillis() + "|LOCAL:" + EMAIL), null);
+
+        cache.get(EMAIL, Provider.LOCAL, loader);
+        assertEquals(2, loads.get());
+        assertEquals(1, invalidations("remote"));
+        assertEquals(1, meterRegistry.get("user_principal.invalidation.lag").timer().count());
+        verify(redisTemplate, never()).convertAndSend(anyString(), any());
+    }
+
+    @Test
+    void ignoresMalformedMessages() {
+        cache.get(EMAIL, Provider.LOCAL, loader);
+
+        cache.onMessage(message("LOCAL:" + EMAIL), null);
+
+        cache.get(EMAIL, Provider.LOCAL, loader);
+        assertEquals(1, loads.get());
+        assertEquals(0, invalidations("remote"));
+    }
+
+    private double invalidations(String source) {
+        return meterRegistry.get("user_principal.invalidations").tag("source", source).counter().count();
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
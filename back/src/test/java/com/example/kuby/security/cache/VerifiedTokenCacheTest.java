@@ -0,0 +1,114 @@
+package com.example.kuby.security.cache;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VerifiedTokenCacheTest {
+    private static final Instant NOW = Instant.parse("2026-01-01T12:00:00Z");
+    private static final Algorithm ALGORITHM = Algorithm.HMAC256("0123456789abcdef0123456789abcdef");
+
+    private final AtomicLong ticker = new AtomicLong(TimeUnit.SECONDS.toNanos(NOW.getEpochSecond()));
+    private final VerifiedTokenCache cache = new VerifiedTokenCache(100, 100, 60, ticker::get);
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    @Test
+    void servesVerifiedTokensFromCache() {
+        String token = token(NOW.plusSeconds(900));
+        Function<String, DecodedJWT> verifier = countingVerifier();
+
+        DecodedJWT first = cache.verify(token, verifier);
+        DecodedJWT second = cache.verify(token, verifier);
+
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(1, verifications.get());
+    }
+
+    @Test
+    void expiresEntriesAtTokenExpiry() {
+        String token = token(NOW.plusSeconds(900));
+        Function<String, DecodedJWT> verifier = countingVerifier();
+
+        cache.verify(token, verifier);
+        advanceSeconds(899);
+        cache.verify(token, verifier);
+        assertEquals(1, verifications.get());
+
+        advanceSeconds(1);
+        cache.verify(token, verifier);
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void remembersRejectedTokensForTheNegativeTtl() {
+        String token = token(NOW.plusSeconds(900));
+        Function<String, DecodedJWT> rejecting = value -> {
+            verifications.incrementAndGet();
+            return null;
+        };
+
+        assertNull(cache.verify(token, rejecting));
+        assertNull(cache.verify(token, rejecting));
+        assertEquals(1, verifications.get());
+
+        advanceSeconds(60);
+        assertNull(cache.verify(token, rejecting));
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void invalidateForcesVerification() {
+        String token = token(NOW.plusSeconds(900));
+        Function<String, DecodedJWT> verifier = countingVerifier();
+
+        cache.verify(token, verifier);
+        cache.invalidate(token);
+        cache.verify(token, verifier);
+
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void rejectsMalformedTokensWithoutVerifying() {
+        Function<String, DecodedJWT> verifier = countingVerifier();
+
+        assertNull(cache.verify("not-a-token", verifier));
+        assertNull(cache.verify("eyJ.a.b.c", verifier));
+        assertNull(cache.verify("eyJhbGciOiJIUzI1NiJ9..sig", verifier));
+        assertNull(cache.verify("eyJhbGciOiJIUzI1NiJ9.e30.", verifier));
+        assertNull(cache.verify("eyJhbGciOiJIUzI1NiJ9.e30.s+g", verifier));
+        assertNull(cache.verify("eyJ" + "a".repeat(5000) + ".e30.sig", verifier));
+        assertEquals(0, verifications.get());
+
+        assertTrue(VerifiedTokenCache.isWellFormed(token(NOW.plusSeconds(900))));
+    }
+
+    private Function<String, DecodedJWT> countingVerifier() {
+        return token -> {
+            verifications.incrementAndGet();
+            return JWT.decode(token);
+        };
+    }
+
+    private void advanceSeconds(long seconds) {
+        ticker.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private static String token(Instant expiresAt) {
+        return JWT.create()
+                .withSubject("user@example.com")
+                .withIssuedAt(NOW)
+                .withExpiresAt(expiresAt)
+                .sign(ALGORITHM);
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.kuby.security.filter;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.example.kuby.foruser.UserRepo;
+import com.example.kuby.redis.RedisBatch;
+import com.example.kuby.redis.RedisBatchFactory;
+import com.example.kuby.security.blacklist.BlacklistEntry;
+import com.example.kuby.security.blacklist.BlacklistService;
+import com.example.kuby.security.blacklist.RevocationWatermarks;
+import com.example.kuby.security.cache.UserPrincipalCache;
+import com.example.kuby.security.cache.VerifiedTokenCache;
+import com.example.kuby.security.context.TokenClaimContext;
+import com.example.kuby.security.context.TokenClaims;
+import com.example.kuby.security.keys.JwtKeyRegistry;
+import com.example.kuby.security.keys.SigningAlgorithm;
+import com.example.kuby.security.models.enums.Provider;
+import com.example.kuby.security.models.enums.TokenActionType;
+import com.example.kuby.security.models.enums.TokenType;
+import com.example.kuby.security.models.enums.UserRoles;
+import com.example.kuby.security.models.principal.UserPrincipal;
+import com.example.kuby.security.ratelimiter.GlobalRateLimit;
+import com.example.kuby.security.service.JwtService;
+import com.example.kuby.security.service.UserAuthenticationProvider;
+import com.example.kuby.security.session.TokenFamilyStore;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// Drives the filter with the real JwtService so pending claim actions are applied to the request in flight
+public class JwtAuthFilterTest {
+    private static final String EMAIL = "user@example.com";
+
+    private final UUID userId = UUID.randomUUID();
+    private final UUID jwtId = UUID.randomUUID();
+    private final JwtKeyRegistry keyRegistry = new JwtKeyRegistry(SigningAlgorithm.HS256, "test-secret",
+            List.of(), 24, 7, "", true);
+    private final BlacklistService blacklistService = mock(BlacklistService.class);
+    private final VerifiedTokenCache verifiedTokenCache = mock(VerifiedTokenCache.class);
+    private final JwtAuthFilter filter;
+    private final AtomicReference<TokenClaims> claimsSeenByHandler = new AtomicReference<>();
+    private final FilterChain chain = (request, response) -> claimsSeenByHandler.set(TokenClaimContext.get());
+
+    JwtAuthFilterTest() {
+        RevocationWatermarks revocationWatermarks = mock(RevocationWatermarks.class);
+        when(revocationWatermarks.isRevoked(any(RedisBatch.class), any(), any())).thenReturn(() -> false);
+
+        RedisBatchFactory redisBatchFactory = mock(RedisBatchFactory.class);
+        when(redisBatchFactory.create()).thenReturn(mock(RedisBatch.class));
+
+        UserPrincipalCache userPrincipalCache = mock(UserPrincipalCache.class);
+        when(userPrincipalCache.get(eq(EMAIL), eq(Provider.LOCAL), any()))
+                .thenReturn(new UserPrincipal(userId, EMAIL, Provider.LOCAL, UserRoles.USER));
+
+        JwtService jwtService = new JwtService(mock(TokenFamilyStore.class), blacklistService, revocationWatermarks, keyRegistry);
+        filter = new JwtAuthFilter(mock(UserAuthenticationProvider.class), mock(UserRepo.class), mock(GlobalRateLimit.class),
+                jwtService, mock(PermitAllUrlConfig.class), verifiedTokenCache, userPrincipalCache,
+                redisBatchFactory, revocationWatermarks);
+    }
+
+    @AfterEach
+    void clearSecurityContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void updateReissuesTheTokenAndTheRequestContinues() throws Exception {
+        blacklist(new BlacklistEntry(Map.of("roles", TokenActionType.UPDATE, "nickname", TokenActionType.UPDATE),
+                Map.of("roles", UserRoles.ADMIN.name()), 3));
+
+        MockHttpServletResponse response = filter(token(Map.of("nickname", "old")));
+
+        DecodedJWT reissued = keyRegistry.verify(reissuedToken(response));
+        assertEquals(UserRoles.ADMIN.name(), reissued.getClaim("roles").asString());
+        assertTrue(reissued.getClaim("nickname").isMissing());
+        assertEquals("3", reissued.getClaim(JwtService.CLAIMS_REVISION).asString());
+        assertEquals(200, response.getStatus());
+        assertEquals(UserRoles.ADMIN, claimsSeenByHandler.get().roles());
+    }
+
+    @Test
+    void tokenThatAlreadyCarriesTheRevisionIsNotReissued() throws Exception {
+        blacklist(new BlacklistEntry(Map.of("roles", TokenActionType.UPDATE), Map.of("roles", UserRoles.ADMIN.name()), 3));
+
+        MockHttpServletResponse response = filter(token(Map.of(JwtService.CLAIMS_REVISION, "3")));
+
+        assertNull(response.getHeader("Authorization"));
+        assertEquals(UserRoles.USER, claimsSeenByHandler.get().roles());
+    }
+
+    @Test
+    void actionsOnProtectedClaimsAreIgnored() throws Exception {
+        blacklist(new BlacklistEntry(Map.of("userId", TokenActionType.UPDATE, "tokenType", TokenActionType.UPDATE),
+                Map.of("userId", UUID.randomUUID().toString()), 4));
+
+        MockHttpServletResponse response = filter(token(Map.of()));
+
+        DecodedJWT reissued = keyRegistry.verify(reissuedToken(response));
+        assertEquals(userId.toString(), reissued.getClaim("userId").asString());
+        assertEquals(jwtId.toString(), reissued.getClaim("jwtId").asString());
+        assertEquals(TokenType.ACCESS.name(), reissued.getClaim("tokenType").asString());
+        assertEquals(userId, claimsSeenByHandler.get().userId());
+    }
+
+    @Test
+    void deleteEndsTheRequestWith420() throws Exception {
+        blacklist(new BlacklistEntry(Map.of("jwtId", TokenActionType.DELETE), Map.of(), 1));
+
+        MockHttpServletResponse response = filter(token(Map.of()));
+
+        assertEquals(420, response.getStatus());
+        assertNull(claimsSeenByHandler.get());
+    }
+
+    private void blacklist(BlacklistEntry entry) {
+        when(blacklistService.getBlacklistEntry(any(RedisBatch.class), eq(jwtId.toString()))).thenReturn(() -> entry);
+    }
+
+    private String token(Map<String, String> extraClaims) {
+        Map<String, String> claims = new LinkedHashMap<>();
+        claims.put("userId", userId.toString());
+        claims.put("jwtId", jwtId.toString());
+        claims.put("tokenType", TokenType.ACCESS.name());
+        claims.put("provider", Provider.LOCAL.name());
+        claims.put("roles", UserRoles.USER.name());
+        claims.putAll(extraClaims);
+
+        Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        String token = keyRegistry.sign(EMAIL, claims, issuedAt, issuedAt.plus(Duration.ofMinutes(15)));
+        when(verifiedTokenCache.verify(eq(token), any())).thenReturn(JWT.decode(token));
+        return token;
+    }
+
+    private MockHttpServletResponse filter(String token) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/task");
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static String reissuedToken(MockHttpServletResponse response) {
+        String header = response.getHeader("Authorization");
+        assertNotNull(header, "token was not reissued");
+        return header.substring("Bearer ".length());
+    }
+}
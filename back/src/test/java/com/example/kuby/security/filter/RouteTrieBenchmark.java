@@ -0,0 +1,72 @@
+package com.example.kuby.security.filter;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of the permit-all decision as the route table grows, against the AntPathRequestMatcher scan it replaced.
+// mvn test-compile exec:exec -Pbenchmark -Djmh.args="RouteTrieBenchmark -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RouteTrieBenchmark {
+    @Param({"10", "100", "1000"})
+    private int routeCount;
+
+    private RouteTrie routeTrie;
+    private List<AntPathRequestMatcher> matchers;
+    // The last declared route and a path no route permits, the worst cases of the linear scan
+    private final String matchedPath = "/api/module0/public/docs/index.html";
+    private final String unmatchedPath = "/api/task/42";
+    private MockHttpServletRequest matchedRequest;
+    private MockHttpServletRequest unmatchedRequest;
+
+    @Setup
+    public void setUp() {
+        List<Route> routes = new ArrayList<>(routeCount);
+        matchers = new ArrayList<>(routeCount);
+        for (int i = routeCount - 1; i >= 0; i--) {
+            String pattern = i % 2 == 0 ? "/api/module" + i + "/public/**" : "/api/module" + i + "/items/{id}";
+            HttpMethod method = i % 2 == 0 ? HttpMethod.GET : HttpMethod.POST;
+            routes.add(Route.permitAll(method, pattern));
+            matchers.add(new AntPathRequestMatcher(pattern, method.name()));
+        }
+        routeTrie = new RouteTrie(routes);
+        matchedRequest = request(matchedPath);
+        unmatchedRequest = request(unmatchedPath);
+    }
+
+    @Benchmark
+    public Route trieMatched() {
+        return routeTrie.match("GET", matchedPath);
+    }
+
+    @Benchmark
+    public Route trieUnmatched() {
+        return routeTrie.match("GET", unmatchedPath);
+    }
+
+    @Benchmark
+    public boolean matcherScanMatched() {
+        return matchers.stream().anyMatch(matcher -> matcher.matches(matchedRequest));
+    }
+
+    @Benchmark
+    public boolean matcherScanUnmatched() {
+        return matchers.stream().anyMatch(matcher -> matcher.matches(unmatchedRequest));
+    }
+
+    private static MockHttpServletRequest request(String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+        request.setServletPath(path);
+        return request;
+    }
+}
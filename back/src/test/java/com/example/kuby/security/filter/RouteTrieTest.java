@@ -0,0 +1,72 @@
+package com.example.kuby.security.filter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouteTrieTest {
+    private final RouteTrie routeTrie = new RouteTrie(List.of(
+            Route.permitAll("/api/user/**"),
+            Route.authenticated(HttpMethod.DELETE, "/api/user/logout"),
+            Route.permitAll(HttpMethod.GET, "/api/tasks/{id}/public"),
+            Route.authenticated(HttpMethod.GET, "/api/tasks/*"),
+            Route.permitAll(HttpMethod.GET, "/swagger-ui.html")
+    ));
+
+    @Test
+    void literalSegmentsBeatCatchAll() {
+        assertEquals(RouteAccess.AUTHENTICATED, routeTrie.match("DELETE", "/api/user/logout").access());
+        assertEquals(RouteAccess.PERMIT_ALL, routeTrie.match("POST", "/api/user/logout").access());
+        assertEquals(RouteAccess.PERMIT_ALL, routeTrie.match("POST", "/api/user/login").access());
+    }
+
+    @Test
+    void catchAllMatchesZeroOrMoreSegments() {
+        assertNotNull(routeTrie.match("GET", "/api/user"));
+        assertNotNull(routeTrie.match("GET", "/api/user/verify/local/"));
+        assertNull(routeTrie.match("GET", "/api/users"));
+    }
+
+    @Test
+    void variablesMatchOneSegment() {
+        assertEquals(RouteAccess.PERMIT_ALL, routeTrie.match("GET", "/api/tasks/42/public").access());
+        assertEquals(RouteAccess.AUTHENTICATED, routeTrie.match("GET", "/api/tasks/42").access());
+        assertNull(routeTrie.match("GET", "/api/tasks/42/private"));
+        assertNull(routeTrie.match("POST", "/api/tasks/42"));
+    }
+
+    @Test
+    void unknownMethodsOnlySeeRoutesForAnyMethod() {
+        assertNotNull(routeTrie.match("PROPFIND", "/api/user/login"));
+        assertNull(routeTrie.match("PROPFIND", "/swagger-ui.html"));
+    }
+
+    @Test
+    void routesAreOrderedMostSpecificFirst() {
+        List<Route> routes = routeTrie.routes();
+        assertTrue(routes.indexOf(Route.authenticated(HttpMethod.DELETE, "/api/user/logout"))
+                < routes.indexOf(Route.permitAll("/api/user/**")));
+    }
+
+    @Test
+    void findsLiteralsAmongManySiblings() {
+        List<String> segments = List.of("m", "module", "a", "modules", "module10", "z", "module2", "mo");
+        RouteTrie siblings = new RouteTrie(segments.stream()
+                .map(segment -> Route.permitAll(HttpMethod.GET, "/api/" + segment + "/items"))
+                .toList());
+
+        for (String segment : segments)
+            assertEquals("/api/" + segment + "/items", siblings.match("GET", "/api/" + segment + "/items").pattern());
+        assertNull(siblings.match("GET", "/api/mod/items"));
+        assertNull(siblings.match("GET", "/api/module1/items"));
+        assertNull(siblings.match("GET", "/api/zz/items"));
+    }
+
+    @Test
+    void rejectsPartialSegmentWildcards() {
+        assertThrows(IllegalStateException.class, () -> new RouteTrie(List.of(Route.permitAll("/static/*.js"))));
+    }
+}
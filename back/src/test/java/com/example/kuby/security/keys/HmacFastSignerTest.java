@@ -0,0 +1,76 @@
+package com.example.kuby.security.keys;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HmacFastSignerTest {
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+    private final HmacFastSigner signer = new HmacFastSigner(SECRET, "key.1");
+
+    @Test
+    void issuesTokensThatJavaJwtVerifies() {
+        Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+        Instant expiresAt = issuedAt.plus(15, ChronoUnit.MINUTES);
+        Map<String, String> claims = new LinkedHashMap<>();
+        claims.put("userId", "6f1c4a52-3c59-4a55-9d4e-1d4f2f0b6a10");
+        claims.put("tokenType", "ACCESS");
+        claims.put("roles", "USER");
+
+        DecodedJWT decoded = JWT.require(Algorithm.HMAC256(SECRET)).build()
+                .verify(signer.sign("user@example.com", claims, issuedAt, expiresAt));
+
+        assertEquals("HS256", decoded.getAlgorithm());
+        assertEquals("JWT", decoded.getType());
+        assertEquals("key.1", decoded.getKeyId());
+        assertEquals("user@example.com", decoded.getSubject());
+        assertEquals(issuedAt, decoded.getIssuedAtAsInstant());
+        assertEquals(expiresAt, decoded.getExpiresAtAsInstant());
+        claims.forEach((name, value) -> assertEquals(value, decoded.getClaim(name).asString()));
+    }
+
+    @Test
+    void escapesStringsLikeAJsonWriter() {
+        String awkward = "quote\" backslash\\ tab\t newline\n bell\u0007 café 😀";
+        String token = signer.sign(awkward, Map.of("name", awkward), null, Instant.now().plusSeconds(60));
+
+        DecodedJWT decoded = JWT.require(Algorithm.HMAC256(SECRET)).build().verify(token);
+
+        assertEquals(awkward, decoded.getSubject());
+        assertEquals(awkward, decoded.getClaim("name").asString());
+        assertNull(decoded.getIssuedAt());
+    }
+
+    @Test
+    void encodesEveryPayloadLengthWithoutPadding() {
+        Algorithm algorithm = Algorithm.HMAC256(SECRET);
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            value.append('x');
+            String token = signer.sign("s", Map.of("v", value.toString()), null, null);
+
+            assertFalse(token.contains("="));
+            assertEquals(value.toString(), JWT.require(algorithm).build().verify(token).getClaim("v").asString());
+        }
+    }
+
+    @Test
+    void keepsSigningCorrectlyAfterTheThreadSwitchedKeys() {
+        HmacFastSigner other = new HmacFastSigner("another-secret-of-enough-length!".getBytes(StandardCharsets.UTF_8), "key.2");
+        other.sign("s", Map.of(), null, null);
+
+        String token = signer.sign("s", Map.of(), null, null);
+
+        assertNotNull(JWT.require(Algorithm.HMAC256(SECRET)).build().verify(token));
+    }
+}
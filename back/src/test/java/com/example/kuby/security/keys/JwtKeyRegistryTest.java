@@ -0,0 +1,151 @@
+package com.example.kuby.security.keys;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JwtKeyRegistryTest {
+    private static final Duration PERIOD = Duration.ofHours(1);
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+
+    @Test
+    void verifiesTokensOfRetiringKeysAfterRotation() {
+        JwtKeyRegistry registry = registry("secret", List.of(), 2);
+        String token = registry.sign(token());
+        String issuedWith = registry.activeKeyId();
+
+        now.addAndGet(PERIOD.toMillis() * 2);
+
+        assertNotEquals(issuedWith, registry.activeKeyId());
+        assertEquals(issuedWith, registry.verify(token).getKeyId());
+    }
+
+    @Test
+    void rejectsTokensOfKeysPastTheRetiringWindow() {
+        JwtKeyRegistry registry = registry("secret", List.of(), 2);
+        String token = registry.sign(token());
+
+        now.addAndGet(PERIOD.toMillis() * 3);
+
+        assertThrows(JWTVerificationException.class, () -> registry.verify(token));
+    }
+
+    @Test
+    void acceptsTokensOfNodesThatAlreadyRotated() {
+        JwtKeyRegistry ahead = registry("secret", List.of(), 0);
+        now.addAndGet(PERIOD.toMillis());
+        String token = ahead.sign(token());
+        now.addAndGet(-PERIOD.toMillis());
+
+        assertNotNull(registry("secret", List.of(), 0).verify(token));
+    }
+
+    @Test
+    void verifiesLegacyTokensWithoutKid() {
+        String legacy = token().sign(Algorithm.HMAC256("secret"));
+
+        assertNotNull(registry("secret", List.of(), 1).verify(legacy));
+        assertThrows(JWTVerificationException.class, () -> registry("other", List.of(), 1).verify(legacy));
+    }
+
+    @Test
+    void keepsTokensOfPreviousSecretVerifiable() {
+        String token = registry("old", List.of(), 1).sign(token());
+
+        assertNotNull(registry("new", List.of("old"), 1).verify(token));
+        assertThrows(JWTVerificationException.class, () -> registry("new", List.of(), 1).verify(token));
+    }
+
+    @Test
+    void ignoresExpiryOnlyWhenAsked() {
+        JwtKeyRegistry registry = registry("secret", List.of(), 1);
+        String expired = registry.sign(JWT.create()
+                .withSubject("user@example.com")
+                .withExpiresAt(Instant.now().minus(Duration.ofDays(30))));
+
+        assertThrows(JWTVerificationException.class, () -> registry.verify(expired));
+        assertEquals("user@example.com", registry.verifyIgnoringExpiry(expired).getSubject());
+    }
+
+    @Test
+    void signsWithTheGreatestEs256KidAndPublishesEveryPublicKey(@TempDir Path keyDir) throws Exception {
+        writeKeyPair(keyDir, "2026-01", true);
+        writeKeyPair(keyDir, "2026-02", true);
+        writeKeyPair(keyDir, "2026-03", false);
+        JwtKeyRegistry registry = new JwtKeyRegistry(new Es256KeySource(keyDir), null);
+
+        String token = registry.sign(token());
+
+        assertEquals("2026-02", JWT.decode(token).getKeyId());
+        assertEquals("ES256", registry.verify(token).getAlgorithm());
+        String jwks = registry.jwks().json();
+        assertTrue(jwks.contains("\"kid\":\"2026-01\"") && jwks.contains("\"kid\":\"2026-03\""), jwks);
+        assertSame(registry.jwks(), registry.jwks());
+    }
+
+    @Test
+    void keepsAcceptingHmacTokensAfterSwitchingToEs256() {
+        HmacKeySource hmac = new HmacKeySource("secret", List.of(), PERIOD, 1, now::get);
+        String hmacToken = new JwtKeyRegistry(hmac, null).sign(token());
+
+        assertNotNull(new JwtKeyRegistry(new Es256KeySource(null), hmac).verify(hmacToken));
+        assertThrows(JWTVerificationException.class, () -> new JwtKeyRegistry(new Es256KeySource(null), null).verify(hmacToken));
+    }
+
+    @Test
+    void signsClaimMapsInBothModes() {
+        Instant expiresAt = Instant.now().plus(Duration.ofMinutes(15));
+        for (JwtKeyRegistry registry : List.of(registry("secret", List.of(), 1), new JwtKeyRegistry(new Es256KeySource(null), null))) {
+            String token = registry.sign("user@example.com", Map.of("roles", "USER"), Instant.now(), expiresAt);
+
+            assertEquals("USER", registry.verify(token).getClaim("roles").asString());
+            assertEquals(registry.activeKeyId(), JWT.decode(token).getKeyId());
+        }
+    }
+
+    @Test
+    void publishesNoKeysInHmacMode() {
+        assertEquals("{\"keys\":[]}", registry("secret", List.of(), 1).jwks().json());
+    }
+
+    private static void writeKeyPair(Path keyDir, String kid, boolean withPrivateKey) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        KeyPair keyPair = generator.generateKeyPair();
+        Files.writeString(keyDir.resolve(kid + ".pub"), pem("PUBLIC KEY", keyPair.getPublic().getEncoded()));
+        if (withPrivateKey)
+            Files.writeString(keyDir.resolve(kid + ".key"), pem("PRIVATE KEY", keyPair.getPrivate().getEncoded()));
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n" + Base64.getMimeEncoder().encodeToString(der) + "\n-----END " + type + "-----\n";
+    }
+
+    private JwtKeyRegistry registry(String secret, List<String> previousSecrets, int retiringCount) {
+        return new JwtKeyRegistry(new HmacKeySource(secret, previousSecrets, PERIOD, retiringCount, now::get), null);
+    }
+
+    private static JWTCreator.Builder token() {
+        return JWT.create()
+                .withSubject("user@example.com")
+                .withExpiresAt(Instant.now().plus(Duration.ofMinutes(15)));
+    }
+}
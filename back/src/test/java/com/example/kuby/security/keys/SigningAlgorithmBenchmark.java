@@ -0,0 +1,109 @@
+package com.example.kuby.security.keys;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Sign and verify throughput of an access token per algorithm.
+// Ed25519 is not supported by java-jwt, so it signs the same header.payload bytes through JCA directly.
+// mvn test-compile exec:exec -Pbenchmark -Djmh.args="SigningAlgorithmBenchmark"
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SigningAlgorithmBenchmark {
+    private static final String SUBJECT = "user@example.com";
+
+    private final Map<String, String> claims = accessTokenClaims();
+    private final Instant issuedAt = Instant.now();
+    private final Instant expiresAt = issuedAt.plus(Duration.ofMinutes(15));
+
+    private JwtKeyRegistry hs256;
+    private JwtKeyRegistry es256;
+    private String hs256Token;
+    private String es256Token;
+
+    private Signature ed25519Signer;
+    private Signature ed25519Verifier;
+    private byte[] ed25519SigningInput;
+    private byte[] ed25519Signature;
+
+    @Setup
+    public void setUp() throws Exception {
+        hs256 = new JwtKeyRegistry(new HmacKeySource("benchmark-secret", List.of(), Duration.ofHours(24), 7,
+                System::currentTimeMillis), null);
+        es256 = new JwtKeyRegistry(new Es256KeySource(null), null);
+        hs256Token = hs256.sign(SUBJECT, claims, issuedAt, expiresAt);
+        es256Token = es256.sign(SUBJECT, claims, issuedAt, expiresAt);
+
+        KeyPair keyPair = KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+        ed25519Signer = Signature.getInstance("Ed25519");
+        ed25519Signer.initSign(keyPair.getPrivate());
+        ed25519Verifier = Signature.getInstance("Ed25519");
+        ed25519Verifier.initVerify(keyPair.getPublic());
+
+        String header = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"alg\":\"EdDSA\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = hs256Token.substring(hs256Token.indexOf('.') + 1, hs256Token.lastIndexOf('.'));
+        ed25519SigningInput = (header + '.' + payload).getBytes(StandardCharsets.US_ASCII);
+        ed25519Signature = ed25519Sign();
+    }
+
+    @Benchmark
+    public String hs256Sign() {
+        return hs256.sign(SUBJECT, claims, issuedAt, expiresAt);
+    }
+
+    @Benchmark
+    public Object hs256Verify() {
+        return hs256.verify(hs256Token);
+    }
+
+    @Benchmark
+    public String es256Sign() {
+        return es256.sign(SUBJECT, claims, issuedAt, expiresAt);
+    }
+
+    @Benchmark
+    public Object es256Verify() {
+        return es256.verify(es256Token);
+    }
+
+    @Benchmark
+    public byte[] ed25519Sign() throws SignatureException {
+        ed25519Signer.update(ed25519SigningInput);
+        return ed25519Signer.sign();
+    }
+
+    @Benchmark
+    public boolean ed25519Verify() throws SignatureException {
+        ed25519Verifier.update(ed25519SigningInput);
+        return ed25519Verifier.verify(ed25519Signature);
+    }
+
+    // Same claims, in the same order, as the access tokens UserAuthenticationProvider issues
+    static Map<String, String> accessTokenClaims() {
+        Map<String, String> claims = new LinkedHashMap<>();
+        claims.put("userId", UUID.randomUUID().toString());
+        claims.put("jwtId", UUID.randomUUID().toString());
+        claims.put("familyId", UUID.randomUUID().toString());
+        claims.put("tokenType", "ACCESS");
+        claims.put("provider", "LOCAL");
+        claims.put("roles", "USER");
+        return claims;
+    }
+}
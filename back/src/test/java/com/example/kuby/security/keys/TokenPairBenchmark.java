@@ -0,0 +1,65 @@
+package com.example.kuby.security.keys;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTCreator;
+import com.auth0.jwt.algorithms.Algorithm;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Issues the access and refresh token of a login, compare gc.alloc.rate.norm between the two signers.
+// mvn test-compile exec:exec -Pbenchmark -Djmh.args="TokenPairBenchmark -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TokenPairBenchmark {
+    private static final String SUBJECT = "user@example.com";
+    private static final String KID = "benchmark";
+    private static final byte[] SECRET = "benchmark-secret".getBytes(StandardCharsets.UTF_8);
+
+    private final HmacFastSigner fastSigner = new HmacFastSigner(SECRET, KID);
+    private final Algorithm algorithm = Algorithm.HMAC256(SECRET);
+    private final Map<String, String> accessClaims = SigningAlgorithmBenchmark.accessTokenClaims();
+    private final Map<String, String> refreshClaims = refreshTokenClaims(accessClaims);
+    private final Instant issuedAt = Instant.now();
+    private final Instant accessExpiresAt = issuedAt.plus(Duration.ofMinutes(15));
+    private final Instant refreshExpiresAt = issuedAt.plus(Duration.ofDays(7));
+
+    @Benchmark
+    public void hmacFastSigner(Blackhole blackhole) {
+        blackhole.consume(fastSigner.sign(SUBJECT, accessClaims, issuedAt, accessExpiresAt));
+        blackhole.consume(fastSigner.sign(SUBJECT, refreshClaims, issuedAt, refreshExpiresAt));
+    }
+
+    @Benchmark
+    public void jwtCreator(Blackhole blackhole) {
+        blackhole.consume(jwtCreatorSign(accessClaims, accessExpiresAt));
+        blackhole.consume(jwtCreatorSign(refreshClaims, refreshExpiresAt));
+    }
+
+    // What JwtKeyRegistry.sign does when the signing key has no fast signer
+    private String jwtCreatorSign(Map<String, String> claims, Instant expiresAt) {
+        JWTCreator.Builder builder = JWT.create().withSubject(SUBJECT);
+        claims.forEach(builder::withClaim);
+        return builder.withIssuedAt(issuedAt)
+                .withExpiresAt(expiresAt)
+                .withKeyId(KID)
+                .sign(algorithm);
+    }
+
+    private static Map<String, String> refreshTokenClaims(Map<String, String> accessClaims) {
+        Map<String, String> claims = new LinkedHashMap<>(accessClaims);
+        claims.put("tokenType", "REFRESH");
+        claims.remove("roles");
+        return claims;
+    }
+}
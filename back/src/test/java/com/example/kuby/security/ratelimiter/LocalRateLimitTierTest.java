@@ -0,0 +1,215 @@
+package com.example.kuby.security.ratelimiter;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class LocalRateLimitTierTest {
+    private static final String CLIENT = "10.0.0.1";
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(100, 1000, 200);
+
+    @Test
+    void callsSharedLimiterOncePerLease() {
+        InMemorySlidingLog shared = new InMemorySlidingLog();
+        LocalRateLimitTier tier = new LocalRateLimitTier(10, 1000);
+
+        for (int i = 0; i < 50; i++)
+            assertTrue(tier.acquire(CLIENT, 0, shared, POLICY).allowed());
+
+        assertEquals(5, shared.acquireCalls);
+        assertEquals(50, shared.outstanding(CLIENT, 0, POLICY));
+    }
+
+    @Test
+    void returnsUnusedPermitsWhenLeaseExpires() {
+        InMemorySlidingLog shared = new InMemorySlidingLog();
+        LocalRateLimitTier tier = new LocalRateLimitTier(10, 100);
+
+        tier.acquire(CLIENT, 0, shared, POLICY);
+        tier.acquire(CLIENT, 10, shared, POLICY);
+        assertEquals(10, shared.outstanding(CLIENT, 10, POLICY));
+
+        tier.evictIdle(200, shared, POLICY);
+        assertEquals(2, shared.outstanding(CLIENT, 200, POLICY));
+        assertEquals(0, tier.size());
+    }
+
+    @Test
+    void returningALeaseKeepsOtherNodesPermits() {
+        InMemorySlidingLog shared = new InMemorySlidingLog();
+        LocalRateLimitTier first = new LocalRateLimitTier(10, 100);
+        LocalRateLimitTier second = new LocalRateLimitTier(10, 100);
+
+        first.acquire(CLIENT, 0, shared, POLICY);
+        for (int i = 0; i < 10; i++)
+            second.acquire(CLIENT, 50, shared, POLICY);
+        assertEquals(20, shared.outstanding(CLIENT, 50, POLICY));
+
+        first.evictIdle(200, shared, POLICY);
+        assertEquals(11, shared.outstanding(CLIENT, 200, POLICY));
+    }
+
+    @Test
+    void cachesDenialUntilBlockExpires() {
+        InMemorySlidingLog shared = new InMemorySlidingLog();
+        LocalRateLimitTier tier = new LocalRateLimitTier(10, 1000);
+
+        for (int i = 0; i < POLICY.limit(); i++)
+            assertTrue(tier.acquire(CLIENT, 0, shared, POLICY).allowed());
+
+        RateLimitDecision denial = tier.acquire(CLIENT, 1, shared, POLICY);
+        assertFalse(denial.allowed());
+        int callsAfterDenial = shared.acquireCalls;
+
+        assertFalse(tier.acquire(CLIENT, 100, shared, POLICY).allowed());
+        assertEquals(callsAfterDenial, shared.acquireCalls);
+    }
+
+    @Test
+    void onlyOneCallerLeasesAtATime() {
+        LocalRateLimitTier tier = new LocalRateLimitTier(10, 1000);
+
+        LocalRateLimitTier.Ticket leasing = tier.begin(CLIENT, 0);
+        LocalRateLimitTier.Ticket concurrent = tier.begin(CLIENT, 0);
+        assertTrue(leasing.lease());
+        assertEquals(10, leasing.permits());
+        assertFalse(concurrent.lease());
+        assertEquals(1, concurrent.permits());
+
+        tier.complete(concurrent, 0, new RateLimitDecision(1, 90, 0));
+        tier.complete(leasing, 0, new RateLimitDecision(10, 80, 0));
+        for (int i = 0; i < 9; i++)
+            assertNotNull(tier.begin(CLIENT, 1).decision());
+        assertTrue(tier.begin(CLIENT, 1).lease());
+    }
+
+    @Test
+    void decidingLocallyAllocatesNothing() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long threadId = Thread.currentThread().getId();
+
+        int iterations = 100_000;
+        LocalRateLimitTier tier = new LocalRateLimitTier(10, 1_000_000);
+        tier.complete(tier.begin(CLIENT, 0), 0, new RateLimitDecision(4 * iterations, 0, 0));
+        String blockedClient = "10.0.0.2";
+        tier.complete(tier.begin(blockedClient, 0), 0, RateLimitDecision.blocked(1_000_000));
+
+        for (int i = 0; i < iterations; i++)
+            decideLocally(tier, blockedClient);
+
+        long overhead = -threads.getThreadAllocatedBytes(threadId) + threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++)
+            decideLocally(tier, blockedClient);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertEquals(0, allocated, "bytes allocated by " + iterations + " local decisions");
+    }
+
+    private static void decideLocally(LocalRateLimitTier tier, String blockedClient) {
+        if (!tier.begin(CLIENT, 1).decision().allowed() || tier.begin(blockedClient, 1).decision().allowed())
+            throw new AssertionError("expected a local decision");
+    }
+
+    @Test
+    void overshootPerWindowIsBoundedByLeaseSizePerNode() {
+        int nodes = 4;
+        int leaseSize = 10;
+        InMemorySlidingLog shared = new InMemorySlidingLog();
+        List<LocalRateLimitTier> tiers = new ArrayList<>();
+        for (int i = 0; i < nodes; i++)
+            tiers.add(new LocalRateLimitTier(leaseSize, 250));
+
+        Random random = new Random(42);
+        List<Long> admitted = new ArrayList<>();
+        for (long now = 0; now < 20_000; now += random.nextInt(3)) {
+            LocalRateLimitTier tier = tiers.get(random.nextInt(nodes));
+            if (tier.acquire(CLIENT, now, shared, POLICY).allowed())
+                admitted.add(now);
+            if (now % 250 == 0)
+                for (LocalRateLimitTier idle : tiers)
+                    idle.evictIdle(now, shared, POLICY);
+        }
+
+        int maxInWindow = 0;
+        for (int start = 0, end = 0; end < admitted.size(); end++) {
+            while (admitted.get(end) - admitted.get(start) >= POLICY.window())
+                start++;
+            maxInWindow = Math.max(maxInWindow, end - start + 1);
+        }
+
+        assertTrue(maxInWindow > POLICY.limit() / 2, "limiter should not starve the client");
+        assertTrue(maxInWindow <= POLICY.limit() + leaseSize * nodes,
+                "admitted " + maxInWindow + " requests in one window");
+    }
+
+    // Exact sliding log mirroring scripts/rate_limit_sliding_log.lua and its release script
+    private static class InMemorySlidingLog implements RateLimitAlgorithm {
+        private final Map<String, Deque<Entry>> logs = new HashMap<>();
+        private final Map<String, Long> blocked = new HashMap<>();
+        private int acquireCalls;
+
+        @Override
+        public String name() {
+            return "in-memory";
+        }
+
+        @Override
+        public RateLimitDecision acquire(String clientKey, long currentTime, RateLimitPolicy policy, int permits, String leaseId) {
+            acquireCalls++;
+            long blockedUntil = blocked.getOrDefault(clientKey, 0L);
+            if (blockedUntil > currentTime)
+                return RateLimitDecision.blocked(blockedUntil);
+
+            Deque<Entry> log = trimmed(clientKey, currentTime, policy);
+            int available = policy.limit() - log.size();
+            if (available <= 0) {
+                blocked.put(clientKey, currentTime + policy.blockDuration());
+                return RateLimitDecision.blocked(currentTime + policy.blockDuration());
+            }
+
+            int granted = Math.min(permits, available);
+            for (int i = 1; i <= granted; i++)
+                log.addLast(new Entry(currentTime, leaseId + ":" + i));
+            return new RateLimitDecision(granted, available - granted, 0);
+        }
+
+        @Override
+        public void release(String clientKey, long currentTime, RateLimitPolicy policy, int permits, String leaseId) {
+            if (leaseId == null)
+                return;
+
+            Deque<Entry> log = trimmed(clientKey, currentTime, policy);
+            for (int i = 1; i <= permits; i++) {
+                String member = leaseId + ":" + i;
+                log.removeIf(entry -> entry.member().equals(member));
+            }
+        }
+
+        int outstanding(String clientKey, long currentTime, RateLimitPolicy policy) {
+            return trimmed(clientKey, currentTime, policy).size();
+        }
+
+        private Deque<Entry> trimmed(String clientKey, long currentTime, RateLimitPolicy policy) {
+            Deque<Entry> log = logs.computeIfAbsent(clientKey, key -> new ArrayDeque<>());
+            while (!log.isEmpty() && log.peekFirst().time() <= currentTime - policy.window())
+                log.removeFirst();
+            return log;
+        }
+
+        private record Entry(long time, String member) {
+        }
+    }
+}
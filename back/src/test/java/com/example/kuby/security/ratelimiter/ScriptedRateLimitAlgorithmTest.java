@@ -0,0 +1,138 @@
+package com.example.kuby.security.ratelimiter;
+
+import com.example.kuby.redis.RedisBatch;
+import com.example.kuby.redis.RedisBatchFactory;
+import com.example.kuby.redis.RedisCircuitBreaker;
+import com.redis.testcontainers.RedisContainer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the Lua scripts behind every scripted algorithm against a real Redis
+@Testcontainers
+public class ScriptedRateLimitAlgorithmTest {
+    private static final RateLimitPolicy POLICY = new RateLimitPolicy(5, 60_000, 10_000);
+
+    @Container
+    static RedisContainer redis = new RedisContainer(DockerImageName.parse("redis:6.2.6"));
+
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate redisTemplate;
+
+    private final long now = System.currentTimeMillis();
+    private final String clientKey = UUID.randomUUID().toString();
+
+    @BeforeAll
+    static void beforeAll() {
+        connectionFactory = new LettuceConnectionFactory(redis.getRedisHost(), redis.getRedisPort());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        connectionFactory.destroy();
+    }
+
+    static List<ScriptedRateLimitAlgorithm> algorithms() {
+        return List.of(
+                new GcraRateLimitAlgorithm(redisTemplate),
+                new SlidingLogRateLimitAlgorithm(redisTemplate),
+                new SlidingWindowCounterRateLimitAlgorithm(redisTemplate));
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    void grantsUpToTheLimit(ScriptedRateLimitAlgorithm algorithm) {
+        for (int i = 1; i <= POLICY.limit(); i++) {
+            RateLimitDecision decision = algorithm.evaluate(clientKey, now, POLICY);
+            assertEquals(1, decision.granted(), algorithm.name());
+            assertEquals(POLICY.limit() - i, decision.remaining(), algorithm.name());
+            assertEquals(0, decision.blockedUntil(), algorithm.name());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    void deniesPastTheLimitUntilTheBlockEnds(ScriptedRateLimitAlgorithm algorithm) {
+        for (int i = 0; i < POLICY.limit(); i++)
+            algorithm.evaluate(clientKey, now, POLICY);
+
+        RateLimitDecision denied = algorithm.evaluate(clientKey, now, POLICY);
+        assertFalse(denied.allowed(), algorithm.name());
+        assertEquals(now + POLICY.blockDuration(), denied.blockedUntil(), algorithm.name());
+
+        RateLimitDecision stillBlocked = algorithm.evaluate(clientKey, now + 1_000, POLICY);
+        assertFalse(stillBlocked.allowed(), algorithm.name());
+        assertEquals(denied.blockedUntil(), stillBlocked.blockedUntil(), algorithm.name());
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    void grantsOnlyWhatIsLeftOfALargerRequest(ScriptedRateLimitAlgorithm algorithm) {
+        algorithm.acquire(clientKey, now, POLICY, 3, "first");
+
+        RateLimitDecision decision = algorithm.acquire(clientKey, now, POLICY, 4, "second");
+
+        assertEquals(2, decision.granted(), algorithm.name());
+        assertEquals(0, decision.remaining(), algorithm.name());
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    void releaseReturnsPermits(ScriptedRateLimitAlgorithm algorithm) {
+        assertEquals(POLICY.limit(), algorithm.acquire(clientKey, now, POLICY, POLICY.limit(), "lease").granted());
+
+        algorithm.release(clientKey, now, POLICY, 3, "lease");
+
+        RateLimitDecision decision = algorithm.acquire(clientKey, now, POLICY, POLICY.limit(), "next");
+        assertEquals(3, decision.granted(), algorithm.name());
+        assertEquals(0, decision.remaining(), algorithm.name());
+    }
+
+    @ParameterizedTest
+    @MethodSource("algorithms")
+    void pipelinedAcquireAndReleaseMatchDirectCalls(ScriptedRateLimitAlgorithm algorithm) {
+        RedisBatchFactory batchFactory = new RedisBatchFactory(redisTemplate,
+                new RedisCircuitBreaker(new SimpleMeterRegistry(), 5, 5_000));
+
+        RedisBatch acquireBatch = batchFactory.create();
+        RedisBatch.Reply<RateLimitDecision> acquired = algorithm.acquire(acquireBatch, clientKey, now, POLICY, 4, "lease");
+        acquireBatch.execute();
+        assertFalse(acquireBatch.isFailed());
+        assertEquals(new RateLimitDecision(4, 1, 0), acquired.get());
+
+        RedisBatch releaseBatch = batchFactory.create();
+        algorithm.release(releaseBatch, clientKey, now, POLICY, 4, "lease");
+        releaseBatch.execute();
+        assertFalse(releaseBatch.isFailed());
+
+        assertEquals(POLICY.limit() - 1, algorithm.evaluate(clientKey, now, POLICY).remaining(), algorithm.name());
+    }
+
+    @Test
+    void slidingLogReleaseOnlyRemovesTheLeasesOwnPermits() {
+        SlidingLogRateLimitAlgorithm algorithm = new SlidingLogRateLimitAlgorithm(redisTemplate);
+        algorithm.acquire(clientKey, now, POLICY, 2, "node-a");
+        algorithm.acquire(clientKey, now, POLICY, 3, "node-b");
+
+        algorithm.release(clientKey, now, POLICY, 3, "node-a");
+
+        RateLimitDecision decision = algorithm.acquire(clientKey, now, POLICY, POLICY.limit(), "node-c");
+        assertEquals(2, decision.granted());
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.kuby.security.service;
+
+import com.example.kuby.exceptions.BasicException;
+import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.foruser.UserRepo;
+import com.example.kuby.redis.RedisCircuitBreaker;
+import com.example.kuby.security.blacklist.RevocationWatermarks;
+import com.example.kuby.security.context.TokenClaims;
+import com.example.kuby.security.keys.JwtKeyRegistry;
+import com.example.kuby.security.keys.SigningAlgorithm;
+import com.example.kuby.security.models.enums.Provider;
+import com.example.kuby.security.models.enums.TokenType;
+import com.example.kuby.security.models.enums.UserRoles;
+import com.example.kuby.security.session.RefreshGraceCache;
+import com.example.kuby.security.session.TokenFamily;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+// Refreshing through the grace window, Redis is a map shared by every RefreshGraceCache of a test
+public class UserAuthenticationProviderTest {
+    private static final String EMAIL = "user@example.com";
+    private static final long GRACE_MILLIS = 200;
+
+    private final JwtKeyRegistry keyRegistry = new JwtKeyRegistry(SigningAlgorithm.HS256, "test-secret",
+            List.of(), 24, 7, "", true);
+    private final JwtService jwtService = mock(JwtService.class);
+    private final UserRepo userRepo = mock(UserRepo.class);
+    private final Map<String, String> redis = new ConcurrentHashMap<>();
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    private final UserEntity user = UserEntity.builder()
+            .id(UUID.randomUUID())
+            .email(EMAIL)
+            .provider(Provider.LOCAL)
+            .roles(UserRoles.USER)
+            .build();
+    private final UUID familyId = UUID.randomUUID();
+    private final TokenFamily family = family(Instant.now().minusSeconds(60));
+    private final String accessToken;
+    private final String refreshToken;
+
+    @SuppressWarnings("unchecked")
+    UserAuthenticationProviderTest() {
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> redis.get(invocation.<String>getArgument(0)));
+        doAnswer(invocation -> redis.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(valueOperations).set(anyString(), anyString(), any(Duration.class));
+        when(userRepo.findByEmailAndProvider(EMAIL, Provider.LOCAL)).thenReturn(Optional.of(user));
+
+        Instant issuedAt = family.updatedAt().truncatedTo(ChronoUnit.SECONDS);
+        accessToken = keyRegistry.sign(EMAIL, claims(family.accessJwtId(), TokenType.ACCESS), issuedAt, family.accessExpiresAt());
+        refreshToken = keyRegistry.sign(EMAIL, claims(family.refreshJwtId(), TokenType.REFRESH), issuedAt, family.refreshExpiresAt());
+    }
+
+    @Test
+    void refreshingTwiceWithinTheWindowReturnsTheSamePair() {
+        when(jwtService.rotateTokenFamily(any(TokenClaims.class), any(), any(), any())).thenReturn(family(Instant.now()));
+
+        String[] first = provider(GRACE_MILLIS).refreshTokens(accessToken, refreshToken);
+        String[] second = provider(GRACE_MILLIS).refreshTokens(accessToken, refreshToken);
+
+        assertArrayEquals(first, second);
+        verify(jwtService, times(1)).rotateTokenFamily(any(TokenClaims.class), any(), any(), any());
+    }
+
+    @Test
+    void sameNodeReturnsTheSamePairWithoutRedis() {
+        when(jwtService.rotateTokenFamily(any(TokenClaims.class), any(), any(), any())).thenReturn(family(Instant.now()));
+        UserAuthenticationProvider provider = provider(GRACE_MILLIS);
+
+        String[] first = provider.refreshTokens(accessToken, refreshToken);
+        redis.clear();
+
+        assertArrayEquals(first, provider.refreshTokens(accessToken, refreshToken));
+    }
+
+    @Test
+    void throttledRotationFallsBackToThePairOfTheRefreshThatWon() {
+        RefreshGraceCache refreshGraceCache = refreshGraceCache(GRACE_MILLIS);
+        String[] winner = {"access", "refresh"};
+        // The other tab rotates between this refresh's grace lookup and its own rotation
+        when(jwtService.rotateTokenFamily(any(TokenClaims.class), any(), any(), any())).thenAnswer(invocation -> {
+            refreshGraceCache.put(family.refreshJwtId(), winner.clone());
+            throw new BasicException(Map.of("request", "too many refresh requests"), HttpStatus.TOO_MANY_REQUESTS);
+        });
+
+        assertArrayEquals(winner, provider(refreshGraceCache).refreshTokens(accessToken, refreshToken));
+    }
+
+    @Test
+    void replayAfterTheWindowIsReuse() throws InterruptedException {
+        when(jwtService.rotateTokenFamily(any(TokenClaims.class), any(), any(), any()))
+                .thenReturn(family(Instant.now()))
+                .thenThrow(new BasicException(Map.of("refresh_token", "Refresh Token was used! You can use refresh token only once."),
+                        HttpStatus.BAD_REQUEST));
+        UserAuthenticationProvider provider = provider(GRACE_MILLIS);
+        provider.refreshTokens(accessToken, refreshToken);
+
+        Thread.sleep(GRACE_MILLIS * 2);
+        redis.clear();
+
+        BasicException ex = assertThrows(BasicException.class, () -> provider.refreshTokens(accessToken, refreshToken));
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getHttpStatus());
+        verify(jwtService, times(2)).rotateTokenFamily(any(TokenClaims.class), any(), any(), any());
+    }
+
+    @Test
+    void zeroGraceDisablesTheCache() {
+        when(jwtService.rotateTokenFamily(any(TokenClaims.class), any(), any(), any()))
+                .thenReturn(family(Instant.now()))
+                .thenThrow(new BasicException(Map.of("request", "too many refresh requests"), HttpStatus.TOO_MANY_REQUESTS));
+        UserAuthenticationProvider provider = provider(0);
+        provider.refreshTokens(accessToken, refreshToken);
+
+        BasicException ex = assertThrows(BasicException.class, () -> provider.refreshTokens(accessToken, refreshToken));
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, ex.getHttpStatus());
+        verifyNoInteractions(redisTemplate);
+    }
+
+    private UserAuthenticationProvider provider(long graceMillis) {
+        return provider(refreshGraceCache(graceMillis));
+    }
+
+    private UserAuthenticationProvider provider(RefreshGraceCache refreshGraceCache) {
+        return new UserAuthenticationProvider(15, 7, jwtService, userRepo, keyRegistry,
+                mock(RevocationWatermarks.class), refreshGraceCache);
+    }
+
+    private RefreshGraceCache refreshGraceCache(long graceMillis) {
+        return new RefreshGraceCache(redisTemplate, new RedisCircuitBreaker(new SimpleMeterRegistry(), 5, 5_000),
+                graceMillis, 100);
+    }
+
+    private TokenFamily family(Instant updatedAt) {
+        return new TokenFamily(familyId, user.getId(), UUID.randomUUID(),
+                UUID.randomUUID(), "device", updatedAt, updatedAt, updatedAt.plus(Duration.ofMinutes(15)),
+                updatedAt.plus(Duration.ofDays(7)));
+    }
+
+    private Map<String, String> claims(UUID jwtId, TokenType tokenType) {
+        Map<String, String> claims = new LinkedHashMap<>();
+        claims.put("userId", user.getId().toString());
+        claims.put("jwtId", jwtId.toString());
+        claims.put("familyId", familyId.toString());
+        claims.put("tokenType", tokenType.name());
+        claims.put("provider", Provider.LOCAL.name());
+        if (tokenType == TokenType.ACCESS)
+            claims.put("roles", UserRoles.USER.name());
+        return claims;
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.kuby.security.session;
+
+import com.example.kuby.KubyApplication;
+import com.redis.testcontainers.RedisContainer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs the writable-CTE rotation against a real Postgres, outcomes rest on its row locks and READ COMMITTED re-checks
+@Testcontainers
+@SpringBootTest(classes = {KubyApplication.class}, properties = {
+        "security.session.store=postgres",
+        "security.session.refresh.throttle.ms=5000"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class PostgresTokenFamilyStoreTest {
+    private static final Duration THROTTLE = Duration.ofMillis(5000);
+
+    @Autowired
+    private TokenFamilyStore tokenFamilyStore;
+    @Autowired
+    private TokenFamilyRepo tokenFamilyRepo;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final Instant now = Instant.now().truncatedTo(ChronoUnit.MICROS);
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:15-alpine"));
+    @Container
+    @ServiceConnection
+    static RedisContainer redis = new RedisContainer(DockerImageName.parse("redis:6.2.6"));
+
+    @BeforeAll
+    static void beforeAll() {
+        postgres.start();
+        redis.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        postgres.stop();
+        redis.stop();
+    }
+
+    @Test
+    void rotatesWhenThePresentedTokenIsCurrent() {
+        assertInstanceOf(PostgresTokenFamilyStore.class, tokenFamilyStore);
+        TokenFamily family = createFamily(now.minus(THROTTLE), now.plus(Duration.ofDays(7)));
+        Rotation rotation = rotation(family, family.refreshJwtId(), now);
+
+        RotationResult result = tokenFamilyStore.rotate(rotation);
+
+        assertEquals(RotationOutcome.ROTATED, result.outcome());
+        assertEquals(rotation.accessJwtId(), result.family().accessJwtId());
+        assertEquals(rotation.refreshJwtId(), result.family().refreshJwtId());
+        assertEquals(now, result.family().updatedAt());
+        assertEquals(result.family(), tokenFamilyRepo.findById(family.id()).orElseThrow().toTokenFamily());
+    }
+
+    @Test
+    void presentingARotatedTokenDeletesTheFamily() {
+        TokenFamily family = createFamily(now.minus(THROTTLE), now.plus(Duration.ofDays(7)));
+
+        RotationResult result = tokenFamilyStore.rotate(rotation(family, UUID.randomUUID(), now));
+
+        assertEquals(RotationOutcome.REUSED, result.outcome());
+        assertEquals(family.accessJwtId(), result.family().accessJwtId());
+        assertTrue(tokenFamilyRepo.findById(family.id()).isEmpty());
+    }
+
+    @Test
+    void rotatingWithinTheThrottleChangesNothing() {
+        TokenFamily family = createFamily(now.minusMillis(1), now.plus(Duration.ofDays(7)));
+
+        assertEquals(RotationOutcome.THROTTLED, tokenFamilyStore.rotate(rotation(family, family.refreshJwtId(), now)).outcome());
+        assertEquals(RotationOutcome.THROTTLED, tokenFamilyStore.rotate(rotation(family, UUID.randomUUID(), now)).outcome());
+
+        assertEquals(family, tokenFamilyRepo.findById(family.id()).orElseThrow().toTokenFamily());
+    }
+
+    @Test
+    void missingExpiredAndForeignFamiliesAreMissing() {
+        TokenFamily expired = createFamily(now.minus(Duration.ofDays(8)), now.minusMillis(1));
+        TokenFamily live = createFamily(now.minus(THROTTLE), now.plus(Duration.ofDays(7)));
+        Rotation foreign = new Rotation(live.id(), UUID.randomUUID(), live.refreshJwtId(), UUID.randomUUID(),
+                UUID.randomUUID(), now, now.plus(Duration.ofMinutes(15)), now.plus(Duration.ofDays(7)));
+
+        assertEquals(RotationOutcome.MISSING, tokenFamilyStore.rotate(rotation(expired, expired.refreshJwtId(), now)).outcome());
+        assertEquals(RotationOutcome.MISSING, tokenFamilyStore.rotate(foreign).outcome());
+        TokenFamily unknown = new TokenFamily(UUID.randomUUID(), live.userId(), UUID.randomUUID(), UUID.randomUUID(),
+                null, now, now, now, now);
+        assertEquals(RotationOutcome.MISSING, tokenFamilyStore.rotate(rotation(unknown, unknown.refreshJwtId(), now)).outcome());
+
+        assertTrue(tokenFamilyRepo.findById(expired.id()).isPresent());
+        assertEquals(live, tokenFamilyRepo.findById(live.id()).orElseThrow().toTokenFamily());
+    }
+
+    @Test
+    void concurrentRotationsOfOneFamilyRotateOnce() throws Exception {
+        TokenFamily family = createFamily(now.minus(THROTTLE), now.plus(Duration.ofDays(7)));
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            // Holding the row lock makes both rotations queue on it, so the second one is re-checked against the
+            // row the first committed
+            CountDownLatch locked = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            Future<?> holder = executor.submit(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                jdbcTemplate.queryForList("SELECT id FROM token_family WHERE id = ? FOR UPDATE", family.id());
+                locked.countDown();
+                awaitUninterruptibly(release);
+            }));
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+            Future<RotationResult> first = executor.submit(() -> tokenFamilyStore.rotate(rotation(family, family.refreshJwtId(), Instant.now())));
+            Future<RotationResult> second = executor.submit(() -> tokenFamilyStore.rotate(rotation(family, family.refreshJwtId(), Instant.now())));
+            awaitLockWaiters(2);
+            release.countDown();
+            holder.get(10, TimeUnit.SECONDS);
+
+            List<RotationResult> results = List.of(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+            assertEquals(Set.of(RotationOutcome.ROTATED, RotationOutcome.THROTTLED),
+                    Set.of(results.get(0).outcome(), results.get(1).outcome()));
+
+            TokenFamily rotated = results.stream()
+                    .filter(result -> result.outcome() == RotationOutcome.ROTATED)
+                    .findFirst().orElseThrow().family();
+            assertEquals(rotated, tokenFamilyRepo.findById(family.id()).orElseThrow().toTokenFamily());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private TokenFamily createFamily(Instant updatedAt, Instant refreshExpiresAt) {
+        TokenFamily family = new TokenFamily(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                "device", updatedAt, updatedAt, updatedAt.plus(Duration.ofMinutes(15)), refreshExpiresAt);
+        tokenFamilyStore.create(family);
+        return family;
+    }
+
+    private static Rotation rotation(TokenFamily family, UUID presentedRefreshJwtId, Instant rotatedAt) {
+        Instant at = rotatedAt.truncatedTo(ChronoUnit.MICROS);
+        return new Rotation(family.id(), family.userId(), presentedRefreshJwtId, UUID.randomUUID(), UUID.randomUUID(),
+                at, at.plus(Duration.ofMinutes(15)), at.plus(Duration.ofDays(7)));
+    }
+
+    private void awaitLockWaiters(int waiters) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (System.currentTimeMillis() < deadline) {
+            Integer waiting = jdbcTemplate.queryForObject("SELECT count(*) FROM pg_stat_activity " +
+                    "WHERE wait_event_type = 'Lock' AND datname = current_database()", Integer.class);
+            if (waiting != null && waiting >= waiters)
+                return;
+            Thread.sleep(10);
+        }
+        fail("rotations never queued on the row lock");
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.kuby.todolist;
+
+import com.example.kuby.KubyApplication;
+import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.utils.DbUtils;
+import com.example.kuby.utils.Mapper;
+import com.example.kuby.utils.MapperParityTest;
+import com.redis.testcontainers.RedisContainer;
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Loads 1,000 tasks through the entity + ModelMapper path the task reads used before and through the TaskView
+// projection, printing latency and bytes allocated per load. Only the allocation gap is asserted, timings vary.
+@Testcontainers
+@SpringBootTest(classes = {KubyApplication.class})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class TaskReadPathTimingTest {
+    private static final int TASKS = 1_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 20;
+
+    @Autowired
+    private TaskRepo taskRepo;
+    @Autowired
+    private Mapper mapper;
+    @Autowired
+    private DbUtils dbUtils;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    private final ModelMapper modelMapper = MapperParityTest.previousModelMapper();
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(DockerImageName.parse("postgres:15-alpine"));
+    @Container
+    @ServiceConnection
+    static RedisContainer redis = new RedisContainer(DockerImageName.parse("redis:6.2.6"));
+
+    @BeforeAll
+    static void beforeAll() {
+        postgres.start();
+        redis.start();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        postgres.stop();
+        redis.stop();
+    }
+
+    @Test
+    void projectionLoadsAThousandTasksWithLessAllocation() {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        UserEntity user = dbUtils.createUser();
+        LocalDateTime deadLine = LocalDateTime.now().plusDays(1).truncatedTo(ChronoUnit.SECONDS);
+        List<Task> tasks = new ArrayList<>(TASKS);
+        for (int i = 0; i < TASKS; i++)
+            tasks.add(Task.builder()
+                    .name("task " + i)
+                    .deadLine(deadLine.plusMinutes(i))
+                    .isFinished(i % 3 == 0)
+                    .creator(user)
+                    .build());
+        taskRepo.saveAll(tasks);
+
+        // Both run in a read-only transaction, like TaskService.getPage
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        Supplier<List<TaskDTO>> entities = () -> readOnly.execute(status -> taskRepo.findAllByCreatorId(user.getId()).stream()
+                .map(task -> {
+                    TaskDTO dto = modelMapper.map(task, TaskDTO.class);
+                    dto.setIsExpired(!task.getDeadLine().isAfter(LocalDateTime.now()));
+                    return dto;
+                })
+                .toList());
+        Supplier<List<TaskDTO>> views = () -> readOnly.execute(status -> taskRepo.findPageByCreatorId(user.getId(), null,
+                        LocalDateTime.of(1, 1, 1, 0, 0), LocalDateTime.of(9999, 12, 31, 23, 59, 59),
+                        LocalDateTime.of(1, 1, 1, 0, 0), new UUID(0, 0), Limit.of(TASKS)).stream()
+                .map(mapper::convertTaskViewToDTO)
+                .toList());
+
+        assertEquals(TASKS, entities.get().size());
+        assertEquals(TASKS, views.get().size());
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            entities.get();
+            views.get();
+        }
+
+        Load entityLoad = measure(threads, entities);
+        Load viewLoad = measure(threads, views);
+        System.out.printf("Per %d tasks: entity + ModelMapper %.2f ms, %d KB; TaskView projection %.2f ms, %d KB%n",
+                TASKS, entityLoad.medianNanos() / 1e6, entityLoad.bytes() / 1024,
+                viewLoad.medianNanos() / 1e6, viewLoad.bytes() / 1024);
+
+        assertTrue(viewLoad.bytes() < entityLoad.bytes(),
+                "projection allocated " + viewLoad.bytes() + " bytes, entities " + entityLoad.bytes());
+    }
+
+    private static Load measure(ThreadMXBean threads, Supplier<List<TaskDTO>> load) {
+        long threadId = Thread.currentThread().getId();
+        long[] nanos = new long[ROUNDS];
+        long bytes = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+            long startedAt = System.nanoTime();
+            load.get();
+            nanos[i] = System.nanoTime() - startedAt;
+            bytes += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+        Arrays.sort(nanos);
+        return new Load(nanos[ROUNDS / 2], bytes / ROUNDS);
+    }
+
+    // Median latency and mean bytes allocated by one load of every task
+    private record Load(long medianNanos, long bytes) {
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.kuby.utils;
+
+import com.example.kuby.foruser.UserEntity;
+import com.example.kuby.todolist.Task;
+import com.example.kuby.todolist.TaskDTO;
+import com.example.kuby.todolist.TaskView;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+import org.modelmapper.convention.MatchingStrategies;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.modelmapper.config.Configuration.AccessLevel.PRIVATE;
+
+// Compares the generated mapper with the ModelMapper configuration it replaced
+public class MapperParityTest {
+    private final Mapper mapper = new MapperImpl();
+    private final ModelMapper modelMapper = previousModelMapper();
+
+    @Test
+    void mapsTasksLikeModelMapper() {
+        for (Task task : tasks())
+            assertEquals(modelMapper.map(task, TaskDTO.class), mapper.map(task));
+    }
+
+    @Test
+    void computesExpiryFromDeadline() {
+        for (Task task : tasks()) {
+            TaskDTO expected = modelMapper.map(task, TaskDTO.class);
+            expected.setIsExpired(!task.getDeadLine().isAfter(LocalDateTime.now()));
+            assertEquals(expected, mapper.convertTaskToDTO(task));
+        }
+    }
+
+    @Test
+    void mapsViewsLikeEntities() {
+        for (Task task : tasks()) {
+            TaskView view = new TaskView(task.getId(), task.getCreator() == null ? null : task.getCreator().getId(),
+                    task.getName(), task.getDeadLine(), task.getIsFinished(), task.getVersion());
+            assertEquals(mapper.convertTaskToDTO(task), mapper.convertTaskViewToDTO(view));
+        }
+    }
+
+    @Test
+    void mapsNullTaskToNull() {
+        assertNull(mapper.map((Task) null));
+    }
+
+    private static List<Task> tasks() {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        UserEntity creator = UserEntity.builder().id(UUID.randomUUID()).build();
+        return List.of(
+                new Task(UUID.randomUUID(), creator, "open", now.plusDays(3), false, false, 0L),
+                new Task(UUID.randomUUID(), creator, "finished", now.plusHours(1).withSecond(59), true, false, 3L),
+                // a stale is_expired column is mapped as is, convertTaskToDTO recomputes it
+                new Task(UUID.randomUUID(), creator, "overdue", now.minusMinutes(5), false, false, 1L),
+                new Task(UUID.randomUUID(), creator, "", LocalDateTime.of(2000, 1, 1, 0, 0), null, true, 7L),
+                new Task(UUID.randomUUID(), null, "no creator", now.plusYears(1), false, false, 0L),
+                new Task(null, creator, null, now, false, null, null));
+    }
+
+    public static ModelMapper previousModelMapper() {
+        ModelMapper mapper = new ModelMapper();
+
+        mapper.getConfiguration()
+                .setMatchingStrategy(MatchingStrategies.STRICT)
+                .setFieldMatchingEnabled(true)
+                .setSkipNullEnabled(true)
+                .setFieldAccessLevel(PRIVATE);
+
+        mapper.typeMap(Task.class, TaskDTO.class)
+                .addMappings(mapping -> {
+                    mapping.map(Task::getCreator, TaskDTO::setCreatorId);
+                    mapping.map(Task::getDeadLine, TaskDTO::setDeadLine);
+                });
+        mapper.createTypeMap(UserEntity.class, UUID.class)
+                .setConverter(context -> context.getSource() == null ? null : context.getSource().getId());
+
+        mapper.createTypeMap(LocalDateTime.class, String.class)
+                .setConverter(context -> {
+                    LocalDateTime source = context.getSource();
+                    return source == null ? null : LocalDateTimeFormatter.convertToString(source);
+                });
+
+        return mapper;
+    }
+}
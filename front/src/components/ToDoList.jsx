@@ -6,26 +6,55 @@ import 'react-tabs/style/react-tabs.css';
 import { FaEdit, FaTrash, FaCheck } from 'react-icons/fa';
 import "./styles/ToDo.css";
 
+const PAGE_SIZE = 50;
+// One tab per status filter of GET /api/task, in tab order
+const STATUSES = ['open', 'finished', 'expired'];
+const emptyPages = () => ({ open: null, finished: null, expired: null });
+
 const TodoList = () => {
-  const [tasks, setTasks] = useState([]);
+  // Loaded items and next cursor of every tab, null until the tab is first shown
+  const [pages, setPages] = useState(emptyPages);
+  const [tabIndex, setTabIndex] = useState(0);
   const [newTask, setNewTask] = useState({ name: '', deadLine: '' });
   const [editingTask, setEditingTask] = useState(null);
+  const status = STATUSES[tabIndex];
 
   useEffect(() => {
-    fetchTasks();
-  }, []);
+    if (!pages[status]) {
+      setPages(current => ({ ...current, [status]: { items: [], nextCursor: null } }));
+      fetchPage(status);
+    }
+  }, [status, pages]);
 
-  const fetchTasks = async () => {
+  const fetchPage = async (status, cursor = null) => {
     try {
       const response = await baseRequest.get('/api/task', {
+        params: { status, limit: PAGE_SIZE, ...(cursor && { cursor }) },
         withCredentials: true
       });
-      setTasks(response.data);
+      setPages(current => ({
+        ...current,
+        [status]: {
+          items: cursor ? [...(current[status]?.items ?? []), ...response.data.items] : response.data.items,
+          nextCursor: response.data.nextCursor
+        }
+      }));
     } catch (error) {
       console.error('Error fetching tasks:', error);
     }
   };
 
+  // Tasks move between tabs when they change, so every tab starts over from its first page
+  const fetchTasks = () => setPages(emptyPages());
+
+  const editTask = (id, changes) => setPages(current => ({
+    ...current,
+    [status]: {
+      ...current[status],
+      items: current[status].items.map(t => t.id === id ? { ...t, ...changes } : t)
+    }
+  }));
+
   const createTask = async (e) => {
     e.preventDefault();
     try {
@@ -83,44 +112,45 @@ const TodoList = () => {
     }
   };
 
-  const renderTaskList = (taskList) => (
-    <ul>
-      {taskList.map(task => (
-        <li key={task.id}>
-          {editingTask === task.id ? (
-            <form onSubmit={(e) => {
-              e.preventDefault();
-              updateTask(task.id, { name: task.name, deadLine: task.deadLine });
-            }}>
-              <input
-                type="text"
-                value={task.name}
-                onChange={(e) => setTasks(tasks.map(t => t.id === task.id ? { ...t, name: e.target.value } : t))}
-              />
-              <input
-                type="datetime-local"
-                value={task.deadLine}
-                onChange={(e) => setTasks(tasks.map(t => t.id === task.id ? { ...t, deadLine: e.target.value } : t))}
-              />
-              <button type="submit">Save</button>
-            </form>
-          ) : (
-            <>
-              {task.name} - {format(parseISO(task.deadLine), 'yyyy-MM-dd HH:mm:ss')}
-              <button onClick={() => setEditingTask(task.id)}><FaEdit /></button>
-              <button onClick={() => deleteTask(task.id)}><FaTrash /></button>
-              {!task.isFinished && <button onClick={() => finishTask(task.id)}><FaCheck /></button>}
-            </>
-          )}
-        </li>
-      ))}
-    </ul>
+  const renderTaskList = (status) => (
+    <>
+      <ul>
+        {(pages[status]?.items ?? []).map(task => (
+          <li key={task.id}>
+            {editingTask === task.id ? (
+              <form onSubmit={(e) => {
+                e.preventDefault();
+                updateTask(task.id, { name: task.name, deadLine: task.deadLine });
+              }}>
+                <input
+                  type="text"
+                  value={task.name}
+                  onChange={(e) => editTask(task.id, { name: e.target.value })}
+                />
+                <input
+                  type="datetime-local"
+                  value={task.deadLine}
+                  onChange={(e) => editTask(task.id, { deadLine: e.target.value })}
+                />
+                <button type="submit">Save</button>
+              </form>
+            ) : (
+              <>
+                {task.name} - {format(parseISO(task.deadLine), 'yyyy-MM-dd HH:mm:ss')}
+                <button onClick={() => setEditingTask(task.id)}><FaEdit /></button>
+                <button onClick={() => deleteTask(task.id)}><FaTrash /></button>
+                {!task.isFinished && <button onClick={() => finishTask(task.id)}><FaCheck /></button>}
+              </>
+            )}
+          </li>
+        ))}
+      </ul>
+      {pages[status]?.nextCursor && (
+        <button onClick={() => fetchPage(status, pages[status].nextCursor)}>Load more</button>
+      )}
+    </>
   );
 
-  const upcomingTasks = tasks.filter(task => !task.isFinished && !task.isExpired);
-  const completedTasks = tasks.filter(task => task.isFinished);
-  const expiredTasks = tasks.filter(task => task.isExpired);
-
   return (
     <div>
       <h1>Todo List</h1>
@@ -145,7 +175,7 @@ const TodoList = () => {
         <button type="submit" id='add'>Add Task</button>
       </form>
 
-      <Tabs>
+      <Tabs selectedIndex={tabIndex} onSelect={setTabIndex}>
         <TabList id='tab'>
           <Tab>Upcoming</Tab>
           <Tab>Completed</Tab>
@@ -154,15 +184,15 @@ const TodoList = () => {
 
         <TabPanel>
           <h2>Upcoming Tasks</h2>
-          {renderTaskList(upcomingTasks)}
+          {renderTaskList('open')}
         </TabPanel>
         <TabPanel>
           <h2>Completed Tasks</h2>
-          {renderTaskList(completedTasks)}
+          {renderTaskList('finished')}
         </TabPanel>
         <TabPanel>
           <h2>Expired Tasks</h2>
-          {renderTaskList(expiredTasks)}
+          {renderTaskList('expired')}
         </TabPanel>
       </Tabs>
     </div>